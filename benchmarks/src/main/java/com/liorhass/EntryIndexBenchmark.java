@@ -0,0 +1,79 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building the per-table indices (the type-ahead filter's sorted
+ * values, and the numeric index) and using them per keystroke, for lists of
+ * 10 to 1M entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntryIndexBenchmark {
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int mEntryCount;
+
+    private ArrayEntrySource mSource;
+    private EntryPrefixIndex.SortedValues mSortedValues;
+    private NumericEntrySource mNumericSource;
+
+    @Setup
+    public void setUp() {
+        String[] values = new String[mEntryCount];
+        java.util.Random random = new java.util.Random(1);
+        for (int i=0 ; i<values.length ; i++) {
+            values[i] = Integer.toString(random.nextInt(10000000));
+        }
+        mSource        = new ArrayEntrySource(values, values, mEntryCount);
+        mSortedValues  = new EntryPrefixIndex.SortedValues(mSource);
+        mNumericSource = new NumericEntrySource(mSource);
+    }
+
+    /** Sorting the values for the type-ahead filter (once per table) */
+    @Benchmark
+    public EntryPrefixIndex.SortedValues buildPrefixIndex() {
+        return new EntryPrefixIndex.SortedValues(mSource);
+    }
+
+    /** Parsing and sorting the values of a numeric list (once per table) */
+    @Benchmark
+    public NumericEntrySource buildNumericIndex() {
+        return new NumericEntrySource(mSource);
+    }
+
+    /** Opening a filtered dialog, and typing "1234" one character at a time */
+    @Benchmark
+    public int typeAhead() {
+        EntryPrefixIndex index = new EntryPrefixIndex(mSortedValues);
+        index.setPrefix("1");
+        index.setPrefix("12");
+        index.setPrefix("123");
+        index.setPrefix("1234");
+        return index.getCount();
+    }
+
+    /** Finding the entry nearest to a typed number (sorted mode's jump) */
+    @Benchmark
+    public int jumpToNearest() {
+        return mNumericSource.nearest(1234567);
+    }
+}
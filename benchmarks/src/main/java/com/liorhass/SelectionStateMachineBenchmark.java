@@ -0,0 +1,96 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the decisions the dialog makes through SelectionStateMachine, for
+ * lists of 10 to 1M entries: opening the dialog (finding the selected row),
+ * binding a screenful of rows, selecting a row, and committing a custom value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectionStateMachineBenchmark {
+    private static final int ROWS_PER_SCREEN = 12;
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int mEntryCount;
+
+    private ArrayEntrySource mSource;
+    private CustomValueHistory mHistory;
+    private String mCurrentValue;
+    private SelectionStateMachine mMachine;
+    private int mFirstVisibleRow = 0;
+
+    @Setup
+    public void setUp() {
+        String[] values = new String[mEntryCount + 1];  // The last one is the custom row's placeholder
+        for (int i=0 ; i<values.length ; i++) {
+            values[i] = Integer.toString(i * 300);
+        }
+        mSource = new ArrayEntrySource(values, values, mEntryCount);
+        mSource.buildIndex();
+        mHistory = CustomValueHistory.decode("7\u001F13\u001F17", 3);
+        mCurrentValue = values[mEntryCount / 2];
+        mMachine = new SelectionStateMachine(mSource, mHistory, mCurrentValue, "4800");
+    }
+
+    /** Opening the dialog: the state machine looks up the current value once */
+    @Benchmark
+    public SelectionStateMachine openDialog() {
+        return new SelectionStateMachine(mSource, mHistory, mCurrentValue, "4800");
+    }
+
+    /** Binding a screenful of rows (the check state and the text of each row) while scrolling */
+    @Benchmark
+    public void bindScreen(Blackhole blackhole) {
+        int first = mFirstVisibleRow;
+        mFirstVisibleRow = (first + ROWS_PER_SCREEN) % Math.max(1, mEntryCount - ROWS_PER_SCREEN);
+        for (int row=first ; row<first+ROWS_PER_SCREEN && row<mEntryCount ; row++) {
+            blackhole.consume(mMachine.isNormalRowChecked(row));
+            blackhole.consume(mSource.getEntry(row));
+        }
+        blackhole.consume(mMachine.isCustomRowChecked());
+    }
+
+    /** Opening the dialog and clicking a normal row */
+    @Benchmark
+    public String selectNormalRow() {
+        SelectionStateMachine machine = new SelectionStateMachine(mSource, mHistory, mCurrentValue, "4800");
+        return machine.onNormalRowClicked(mEntryCount - 1);
+    }
+
+    /** Opening the dialog, typing a custom value and pressing OK (including the history update) */
+    @Benchmark
+    public String commitCustomValue() {
+        SelectionStateMachine machine = new SelectionStateMachine(mSource, mHistory, mCurrentValue, "4800");
+        machine.onCustomFieldFocused();
+        machine.onCustomTextChanged("12345");
+        String value = machine.onOkClicked();
+        if (mSource.indexOfValue(value) == EntrySource.NOT_FOUND) {
+            CustomValueHistory history = CustomValueHistory.decode(mHistory.encode(), 3);
+            history.add(value);
+            return history.encode();
+        }
+        return value;
+    }
+}
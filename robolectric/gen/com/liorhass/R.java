@@ -0,0 +1,56 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * The resource IDs of ../res, in the form aapt generates them. The Robolectric
+ * build has no aapt, so this file is maintained by hand: when a resource that
+ * the code refers to is added or renamed, update it here too.
+ * Robolectric reads the IDs from this class and the resources themselves from
+ * ../res; resources that the code doesn't refer to needn't be listed.
+ */
+public final class R {
+    public static final class attr {
+        public static final int customHistorySize  = 0x7f010000;
+        public static final int valueType          = 0x7f010001;
+        public static final int minValue           = 0x7f010002;
+        public static final int maxValue           = 0x7f010003;
+        public static final int sortedNumericIndex = 0x7f010004;
+    }
+    public static final class array {
+        public static final int pref_baudrate_titles = 0x7f020000;
+        public static final int pref_baudrate_values = 0x7f020001;
+    }
+    public static final class id {
+        public static final int action_settings                    = 0x7f030000;
+        public static final int custom_list_view_row_edit_text     = 0x7f030001;
+        public static final int custom_list_view_row_radio_button  = 0x7f030002;
+        public static final int custom_list_view_row_text_view     = 0x7f030003;
+        public static final int main_textview                      = 0x7f030004;
+    }
+    public static final class layout {
+        public static final int activity_main                     = 0x7f040000;
+        public static final int list_preference_row_normal        = 0x7f040001;
+        public static final int list_preference_row_with_edit_text = 0x7f040002;
+    }
+    public static final class menu {
+        public static final int main = 0x7f050000;
+    }
+    public static final class string {
+        public static final int ok = 0x7f060000;
+    }
+    public static final class xml {
+        public static final int preferences = 0x7f070000;
+    }
+    public static final class styleable {
+        public static final int[] ListPreferenceWithEditText = {
+            0x7f010000, 0x7f010001, 0x7f010002, 0x7f010003, 0x7f010004
+        };
+        public static final int ListPreferenceWithEditText_customHistorySize  = 0;
+        public static final int ListPreferenceWithEditText_valueType          = 1;
+        public static final int ListPreferenceWithEditText_minValue           = 2;
+        public static final int ListPreferenceWithEditText_maxValue           = 3;
+        public static final int ListPreferenceWithEditText_sortedNumericIndex = 4;
+    }
+}
@@ -0,0 +1,56 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The checked-in upper bounds of the dialog's costs (baselines.properties in
+ * the test resources). Measurements are checked against them one by one, and
+ * assertWithinBaselines() fails with all the measurements that exceeded their
+ * bounds. Every measurement is also printed, to update the file from after an
+ * intended change.
+ */
+class Baselines {
+    private static final String RESOURCE = "/baselines.properties";
+
+    private final Properties mBounds = new Properties();
+    private final StringBuilder mExceeded = new StringBuilder();
+
+    Baselines() throws IOException {
+        InputStream in = Baselines.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            throw new IOException(RESOURCE + " not found");
+        }
+        try {
+            mBounds.load(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /** Check a measurement against the bound of key. A key with no bound is an error. */
+    void check(String key, long measured) {
+        System.out.println("measured " + key + "=" + measured);
+        String bound = mBounds.getProperty(key);
+        if (bound == null) {
+            mExceeded.append("\n  ").append(key).append(": no baseline (measured ").append(measured).append(')');
+        }
+        else if (measured > Long.parseLong(bound.trim())) {
+            mExceeded.append("\n  ").append(key).append(": ").append(measured)
+                     .append(" > baseline ").append(bound.trim());
+        }
+    }
+
+    void assertWithinBaselines() {
+        if (mExceeded.length() > 0) {
+            fail("Measurements exceeded their baselines (" + RESOURCE + "):" + mExceeded);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.app.AlertDialog;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.widget.ListView;
+
+/**
+ * Drives the ListPreferenceWithEditText of SettingsActivity: gives it a list
+ * of entries of a given size, opens its dialog, lays out and scrolls the
+ * dialog's list like a phone screen would, and selects rows.
+ * Robolectric gives dialog windows no size, so while the dialog is open the
+ * main looper is paused (no layout traversals run) and the harness lays out
+ * the list itself.
+ */
+class DialogHarness {
+    static final String PREF_KEY = "pref_baudrate";
+    private static final int LIST_WIDTH  = 480;
+    private static final int LIST_HEIGHT = 800;
+    private static final int SCROLL_STEP = LIST_HEIGHT / 4; // Pixels per frame of a scroll
+    private static final long WRITE_TIMEOUT_MS = 5000;
+
+    private final ActivityController<SettingsActivity> mController;
+    private final SettingsFragment mFragment;
+    private ListPreferenceWithEditText mPreference;
+    private AlertDialog mDialog = null;
+    private ListView mListView = null;
+    private boolean mPaused = false;
+
+    /** Start SettingsActivity, and give its preference entryCount entries (plus the custom row) */
+    DialogHarness(int entryCount) {
+        mController = Robolectric.buildActivity(SettingsActivity.class).setup();
+        SettingsActivity activity = mController.get();
+        activity.getFragmentManager().executePendingTransactions();
+        mFragment = (SettingsFragment)activity.getFragmentManager().findFragmentById(android.R.id.content);
+        mPreference = (ListPreferenceWithEditText)mFragment.findPreference(PREF_KEY);
+        setEntryCount(entryCount);
+    }
+
+    /**
+     * Give the preference the numeric entries "1000", "1010", ... and, in the
+     * last place, the custom row's default value.
+     */
+    void setEntryCount(int entryCount) {
+        CharSequence[] entries = new CharSequence[entryCount + 1];
+        CharSequence[] values  = new CharSequence[entryCount + 1];
+        for (int i = 0; i < entryCount; i++) {
+            values[i]  = Integer.toString(1000 + 10 * i);
+            entries[i] = values[i];
+        }
+        entries[entryCount] = "custom";
+        values[entryCount]  = "7";
+        mPreference.setEntries(entries);
+        mPreference.setEntryValues(values);
+    }
+
+    /**
+     * Add a ListPreferenceWithEditText like the one in preferences.xml to the
+     * screen, as if it were inflated from XML with key as its android:key.
+     */
+    ListPreferenceWithEditText addPreference(String key) {
+        AttributeSet attrs = Robolectric.buildAttributeSet()
+                .addAttribute(android.R.attr.key, key)
+                .addAttribute(android.R.attr.entries, "@array/pref_baudrate_titles")
+                .addAttribute(android.R.attr.entryValues, "@array/pref_baudrate_values")
+                .build();
+        ListPreferenceWithEditText preference = new ListPreferenceWithEditText(getActivity(), attrs);
+        mFragment.getPreferenceScreen().addPreference(preference);
+        return preference;
+    }
+
+    ListPreferenceWithEditText getPreference() {
+        return mPreference;
+    }
+
+    /** Drive preference (e.g. one added with addPreference()) instead of the current one */
+    void setPreference(ListPreferenceWithEditText preference) {
+        mPreference = preference;
+    }
+
+    SettingsActivity getActivity() {
+        return mController.get();
+    }
+
+    AlertDialog getDialog() {
+        return mDialog;
+    }
+
+    ListView getListView() {
+        return mListView;
+    }
+
+    /** Open the dialog, and lay out its list. The list shows its first rows. */
+    AlertDialog open() {
+        mPreference.showDialog(null);
+        mDialog = (AlertDialog)mPreference.getDialog();
+        mListView = mDialog.getListView();
+        ShadowLooper.pauseMainLooper();
+        layOut();
+        return mDialog;
+    }
+
+    private void layOut() {
+        mListView.measure(MeasureSpec.makeMeasureSpec(LIST_WIDTH, MeasureSpec.EXACTLY),
+                          MeasureSpec.makeMeasureSpec(LIST_HEIGHT, MeasureSpec.EXACTLY));
+        mListView.layout(0, 0, LIST_WIDTH, LIST_HEIGHT);
+    }
+
+    /** Scroll the list from where it is to its bottom, a few rows per frame */
+    void scrollToBottom() {
+        while (mListView.getLastVisiblePosition() < mListView.getCount() - 1) {
+            mListView.scrollListBy(SCROLL_STEP);
+        }
+    }
+
+    /** Scroll the row at position into view, and click it. This closes the dialog. */
+    void clickRow(int position) {
+        mListView.setSelection(position);
+        layOut();
+        View row = mListView.getChildAt(position - mListView.getFirstVisiblePosition());
+        row.performClick();
+        onClosed();
+    }
+
+    /** Close the dialog with its "Cancel" button */
+    void cancel() {
+        mDialog.getButton(AlertDialog.BUTTON_NEGATIVE).performClick();
+        onClosed();
+    }
+
+    private void onClosed() {
+        // Run the dialog's dismiss callbacks
+        ShadowLooper.unPauseMainLooper();
+        ShadowLooper.idleMainLooper();
+        mDialog = null;
+        mListView = null;
+    }
+
+    /** Wait until the selections made so far are committed */
+    void awaitWrites() throws InterruptedException {
+        mPreference.flushPendingWrites();
+        if (!mPreference.awaitPendingWrites(WRITE_TIMEOUT_MS)) {
+            throw new AssertionError("The SharedPreferences weren't written within " + WRITE_TIMEOUT_MS + "ms");
+        }
+        // Deliver the change notifications
+        ShadowLooper.idleMainLooper();
+    }
+
+    /** Send the activity to the background (onPause()) */
+    void pause() {
+        mController.pause();
+        mPaused = true;
+    }
+
+    /** Close the dialog if it's open, and destroy the activity */
+    void finish() {
+        if (mDialog != null) {
+            cancel();
+        }
+        if (!mPaused) {
+            pause();
+        }
+        mController.stop().destroy();
+    }
+}
@@ -0,0 +1,174 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAlertDialog;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowDialog;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowWindowManagerImpl;
+
+import android.app.AlertDialog;
+import android.widget.EditText;
+import android.widget.ListView;
+
+/**
+ * Nothing of a closed dialog may outlive it: opening and closing the dialog
+ * many times must not retain the dialogs, their views or adapters, nor grow
+ * the heap, nor leave callbacks pending on the shared Handler.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DialogLifecycleTest {
+    private static final int ENTRY_COUNT = 20;
+    private static final int CYCLES = 30;
+    private static final int WARM_UP_CYCLES = 10;
+    // Robolectric's resource caches and typeface registry grow by about 5KB
+    // per cycle. A leaked custom field alone retains hundreds of KB per cycle.
+    private static final long MAX_GROWTH_PER_CYCLE = 16 * 1024;
+    private static final long AFTER_CLOSE_MS = 1000;
+    private static final int GC_ROUNDS = 10;
+
+    private DialogHarness mHarness;
+    // The dialogs, list views and custom fields that were closed, and their adapters
+    private final ArrayList<WeakReference<Object>> mClosed = new ArrayList<WeakReference<Object>>();
+    private final ArrayList<WeakReference<Object>> mClosedAdapters = new ArrayList<WeakReference<Object>>();
+
+    @Before
+    public void setUp() {
+        // With no delay Robolectric runs the first animation frame inside
+        // postCallback(), before ValueAnimator records that a frame is
+        // scheduled, and no frame ever runs again: every animator started
+        // after that (e.g. the rows' ripples) would be kept pending forever
+        ShadowChoreographer.setPostCallbackDelay(1);
+        mHarness = new DialogHarness(ENTRY_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        mHarness.finish();
+        ShadowChoreographer.setPostCallbackDelay(0);
+    }
+
+    /**
+     * Open the dialog, give the custom field the focus and type in it (which
+     * posts the keyboard and focus callbacks), and close the dialog: every
+     * other time with "Cancel", and otherwise by selecting a row.
+     */
+    private void openAndClose(int cycle) {
+        AlertDialog dialog = mHarness.open();
+        mHarness.scrollToBottom();
+        ListView listView = mHarness.getListView();
+        EditText customField = (EditText)listView.getChildAt(listView.getChildCount() - 1)
+                .findViewById(R.id.custom_list_view_row_edit_text);
+        customField.requestFocus();
+        customField.setText(Integer.toString(100 + cycle));
+        mClosed.add(new WeakReference<Object>(dialog));
+        mClosed.add(new WeakReference<Object>(listView));
+        mClosedAdapters.add(new WeakReference<Object>(listView.getAdapter()));
+        mClosed.add(new WeakReference<Object>(customField));
+        if (cycle % 2 == 0) {
+            mHarness.cancel();
+        }
+        else {
+            mHarness.clickRow(cycle % ENTRY_COUNT);
+        }
+        afterClose();
+    }
+
+    private static void afterClose() {
+        // Let the delayed callbacks (e.g. the keyboard's retries) run, as they
+        // would on a device in the time after the dialog closed
+        ShadowLooper.idleMainLooper(AFTER_CLOSE_MS);
+        // Robolectric keeps every dialog that was shown, and the latest
+        // AlertDialog, to let tests inspect them, and every window removed
+        // with removeViewImmediate() (as a dialog's window is). None of them
+        // would be kept on a device.
+        ShadowDialog.reset();
+        ShadowAlertDialog.reset();
+        ShadowWindowManagerImpl.reset();
+    }
+
+    /**
+     * Collect garbage until all the referents are collected, or a few rounds
+     * went by. A view is freed only after its RenderNode is finalized.
+     * @return the number of referents that weren't collected
+     */
+    private static int collectGarbage(ArrayList<WeakReference<Object>> refs) {
+        int retained = refs.size();
+        for (int i=0 ; i<10  &&  retained > 0 ; i++) {
+            System.gc();
+            System.runFinalization();
+            retained = 0;
+            for (WeakReference<Object> ref : refs) {
+                if (ref.get() != null) {
+                    retained++;
+                }
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * @return the smallest used heap in a few rounds of garbage collection.
+     * Finalizable objects (e.g. views' RenderNodes, and whatever they hold)
+     * are freed only by a collection after their finalizers ran.
+     */
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i=0 ; i<GC_ROUNDS ; i++) {
+            System.gc();
+            System.runFinalization();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    @Test
+    public void closedDialogsAreCollected() {
+        for (int cycle=0 ; cycle<CYCLES ; cycle++) {
+            openAndClose(cycle);
+        }
+        assertEquals("Closed dialogs and views that weren't collected", 0, collectGarbage(mClosed));
+        // DialogPreference keeps the builder of the last dialog it showed, and
+        // with it that dialog's (torn down) adapter
+        assertTrue("Adapters of closed dialogs that weren't collected", collectGarbage(mClosedAdapters) <= 1);
+    }
+
+    @Test
+    public void noCallbacksArePendingAfterClose() {
+        for (int cycle=0 ; cycle<2 ; cycle++) {
+            openAndClose(cycle);
+            assertFalse("Pending callbacks after closing the dialog",
+                    PreferenceCoordinator.get(mHarness.getActivity()).getHandler().hasMessages(0));
+        }
+    }
+
+    @Test
+    public void retainedHeapStaysFlat() {
+        for (int cycle=0 ; cycle<WARM_UP_CYCLES ; cycle++) {
+            openAndClose(cycle);
+        }
+        long startHeap = usedHeapAfterGc();
+        for (int cycle=0 ; cycle<CYCLES ; cycle++) {
+            openAndClose(cycle);
+        }
+        long growthPerCycle = (usedHeapAfterGc() - startHeap) / CYCLES;
+        System.out.println("measured retained heap growth per open/close cycle=" + growthPerCycle + " bytes");
+        assertTrue("Retained heap grew by " + growthPerCycle + " bytes per open/close cycle",
+                growthPerCycle <= MAX_GROWTH_PER_CYCLE);
+    }
+}
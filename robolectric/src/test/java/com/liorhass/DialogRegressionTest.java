@@ -0,0 +1,79 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+
+/**
+ * Opens the dialog of SettingsActivity's ListPreferenceWithEditText with lists
+ * of several sizes, and fails when its costs exceed the checked-in baselines:
+ * rows inflated while opening and scrolling, getView() calls in a scroll
+ * from top to bottom, SharedPreferences reads on the main thread, commits
+ * per selection, and the time onPrepareDialogBuilder() takes.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class DialogRegressionTest {
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} entries")
+    public static Collection<Object[]> entryCounts() {
+        return Arrays.asList(new Object[][] { {10}, {100}, {1000}, {10000} });
+    }
+
+    private final int mEntryCount;
+    private DialogHarness mHarness;
+    private CountingMetricsListener mMetrics;
+
+    public DialogRegressionTest(int entryCount) {
+        mEntryCount = entryCount;
+    }
+
+    @Before
+    public void setUp() {
+        mHarness = new DialogHarness(mEntryCount);
+        mMetrics = new CountingMetricsListener();
+        mHarness.getPreference().setMetricsListener(mMetrics);
+        ShadowSharedPreferencesImpl.reset();
+        ShadowSharedPreferencesEditorImpl.reset();
+    }
+
+    @After
+    public void tearDown() {
+        mHarness.finish();
+    }
+
+    @Test
+    public void costsWithinBaselines() throws Exception {
+        Baselines baselines = new Baselines();
+        String prefix = "entries." + mEntryCount + ".";
+
+        // Open the dialog, and scroll through the whole list
+        mHarness.open();
+        int boundWhileOpening = mMetrics.getBoundRows();
+        mHarness.scrollToBottom();
+        baselines.check(prefix + "inflatedRows", mMetrics.getInflatedRows());
+        baselines.check(prefix + "getViewPerScrollPass", mMetrics.getBoundRows() - boundWhileOpening);
+
+        // Select an entry in the middle of the list
+        int commitsBefore = ShadowSharedPreferencesEditorImpl.getCommits();
+        mHarness.clickRow(mEntryCount / 2);
+        mHarness.awaitWrites();
+        baselines.check(prefix + "commitsPerSelection", ShadowSharedPreferencesEditorImpl.getCommits() - commitsBefore);
+        baselines.check(prefix + "mainThreadPrefReads", ShadowSharedPreferencesImpl.getMainThreadReads());
+
+        // Opening the dialog again costs what it always will: the first
+        // opening also includes loading classes and resources.
+        mMetrics.reset();
+        mHarness.open();
+        baselines.check(prefix + "prepareMillis", TimeUnit.NANOSECONDS.toMillis(mMetrics.getPrepareNanos()));
+
+        baselines.assertWithinBaselines();
+    }
+}
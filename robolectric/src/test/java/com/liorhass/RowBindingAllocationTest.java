@@ -0,0 +1,123 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import android.view.View;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Binding a recycled row must not allocate: the rows share their listeners,
+ * and a row's text is set only when it changes. The bytes allocated by the
+ * test's thread are measured with HotSpot's per-thread allocation counter.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RowBindingAllocationTest {
+    private static final int ENTRY_COUNT = 100;
+    private static final int BINDS = 10000;
+    private static final int REPEATS = 5;
+
+    private com.sun.management.ThreadMXBean mThreadMXBean;
+    private DialogHarness mHarness;
+    private ListView mListView;
+    private ListAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        mThreadMXBean = (com.sun.management.ThreadMXBean)bean;
+        assumeTrue(mThreadMXBean.isThreadAllocatedMemorySupported());
+        mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        mHarness = new DialogHarness(ENTRY_COUNT);
+        mHarness.open();
+        mListView = mHarness.getListView();
+        mAdapter = mListView.getAdapter();
+    }
+
+    @After
+    public void tearDown() {
+        mHarness.finish();
+    }
+
+    private long allocatedBytes() {
+        return mThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** @return The bytes allocated per bind (rounded down) by BINDS binds of row to position */
+    private long bytesPerRebind(int position, View row) {
+        for (int i=0 ; i<BINDS ; i++) {  // Warm-up
+            mAdapter.getView(position, row, mListView);
+        }
+        long startBytes = allocatedBytes();
+        for (int i=0 ; i<BINDS ; i++) {
+            mAdapter.getView(position, row, mListView);
+        }
+        return (allocatedBytes() - startBytes) / BINDS;
+    }
+
+    @Test
+    public void rebindingNormalRowAllocatesNothing() {
+        View row = mListView.getChildAt(0);
+        assertEquals(0, bytesPerRebind(3, row));
+    }
+
+    @Test
+    public void rebindingCustomRowAllocatesNothing() {
+        int customPosition = mAdapter.getCount() - 1;
+        View row = mAdapter.getView(customPosition, null, mListView);
+        assertEquals(0, bytesPerRebind(customPosition, row));
+    }
+
+    @Test
+    public void bindingNormalRowAllocatesOnlyWhatSetTextDoes() {
+        View row = mListView.getChildAt(0);
+        TextView textView = (TextView)row.findViewById(R.id.custom_list_view_row_text_view);
+        CharSequence[] entries = mHarness.getPreference().getEntries();
+
+        // The JIT may optimize one of the loops in the middle of a measurement,
+        // while an allocation of the adapter shows in every measurement: take
+        // the median of a few
+        long[] excessBytes = new long[REPEATS];
+        for (int repeat=0 ; repeat<REPEATS ; repeat++) {
+            // What TextView.setText() itself allocates, when the text changes on every call
+            for (int i=0 ; i<BINDS ; i++) {  // Warm-up
+                textView.setText(entries[i % ENTRY_COUNT]);
+            }
+            long startBytes = allocatedBytes();
+            for (int i=0 ; i<BINDS ; i++) {
+                textView.setText(entries[i % ENTRY_COUNT]);
+            }
+            long setTextBytes = allocatedBytes() - startBytes;
+
+            // Binding the row to a different entry on every call, as when scrolling
+            for (int i=0 ; i<BINDS ; i++) {  // Warm-up
+                mAdapter.getView(i % ENTRY_COUNT, row, mListView);
+            }
+            startBytes = allocatedBytes();
+            for (int i=0 ; i<BINDS ; i++) {
+                mAdapter.getView(i % ENTRY_COUNT, row, mListView);
+            }
+            long bindBytes = allocatedBytes() - startBytes;
+            excessBytes[repeat] = bindBytes - setTextBytes;
+        }
+        Arrays.sort(excessBytes);
+
+        assertEquals("Bytes the adapter allocates per bind", 0, Math.max(0, excessBytes[REPEATS / 2]) / BINDS);
+    }
+}
@@ -0,0 +1,44 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadow.api.Shadow;
+
+/**
+ * Counts the commits of SharedPreferences editors, whether by commit() or by
+ * apply(), on any thread, and passes them on to the real implementation.
+ */
+@Implements(className = ShadowSharedPreferencesEditorImpl.CLASS_NAME, isInAndroidSdk = false)
+public class ShadowSharedPreferencesEditorImpl {
+    static final String CLASS_NAME = "android.app.SharedPreferencesImpl$EditorImpl";
+
+    private static final AtomicInteger sCommits = new AtomicInteger();
+
+    @RealObject private Object mRealEditor;
+
+    public static int getCommits() {
+        return sCommits.get();
+    }
+
+    public static void reset() {
+        sCommits.set(0);
+    }
+
+    @Implementation
+    public boolean commit() {
+        sCommits.incrementAndGet();
+        return Shadow.<Boolean>directlyOn(mRealEditor, CLASS_NAME, "commit");
+    }
+
+    @Implementation
+    public void apply() {
+        sCommits.incrementAndGet();
+        Shadow.directlyOn(mRealEditor, CLASS_NAME, "apply");
+    }
+}
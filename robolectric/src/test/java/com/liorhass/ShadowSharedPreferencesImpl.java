@@ -0,0 +1,112 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import android.content.SharedPreferences;
+import android.os.Looper;
+
+/**
+ * Counts the reads of the SharedPreferences that are done on the main thread
+ * (where a read may block on loading the file), and the editors created on
+ * any thread, and passes them on to the real implementation.
+ */
+@Implements(className = ShadowSharedPreferencesImpl.CLASS_NAME, isInAndroidSdk = false)
+public class ShadowSharedPreferencesImpl {
+    static final String CLASS_NAME = "android.app.SharedPreferencesImpl";
+
+    private static final AtomicInteger sMainThreadReads = new AtomicInteger();
+    private static final AtomicInteger sEditors = new AtomicInteger();
+
+    @RealObject private Object mRealPrefs;
+
+    public static int getMainThreadReads() {
+        return sMainThreadReads.get();
+    }
+
+    public static int getEditors() {
+        return sEditors.get();
+    }
+
+    public static void reset() {
+        sMainThreadReads.set(0);
+        sEditors.set(0);
+    }
+
+    private static void countRead() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            sMainThreadReads.incrementAndGet();
+        }
+    }
+
+    @Implementation
+    public SharedPreferences.Editor edit() {
+        sEditors.incrementAndGet();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "edit");
+    }
+
+    @Implementation
+    public Map<String, ?> getAll() {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getAll");
+    }
+
+    @Implementation
+    public String getString(String key, String defValue) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getString",
+                ClassParameter.from(String.class, key), ClassParameter.from(String.class, defValue));
+    }
+
+    @Implementation
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getStringSet",
+                ClassParameter.from(String.class, key), ClassParameter.from(Set.class, defValues));
+    }
+
+    @Implementation
+    public int getInt(String key, int defValue) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getInt",
+                ClassParameter.from(String.class, key), ClassParameter.from(int.class, defValue));
+    }
+
+    @Implementation
+    public long getLong(String key, long defValue) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getLong",
+                ClassParameter.from(String.class, key), ClassParameter.from(long.class, defValue));
+    }
+
+    @Implementation
+    public float getFloat(String key, float defValue) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getFloat",
+                ClassParameter.from(String.class, key), ClassParameter.from(float.class, defValue));
+    }
+
+    @Implementation
+    public boolean getBoolean(String key, boolean defValue) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "getBoolean",
+                ClassParameter.from(String.class, key), ClassParameter.from(boolean.class, defValue));
+    }
+
+    @Implementation
+    public boolean contains(String key) {
+        countRead();
+        return Shadow.directlyOn(mRealPrefs, CLASS_NAME, "contains",
+                ClassParameter.from(String.class, key));
+    }
+}
@@ -0,0 +1,134 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * The preferences of a screen share one PreferenceCoordinator: creating a
+ * preference creates no Handler, writer or SharedPreferences editor of its
+ * own, and with the DEFERRED flush policy the selections made in the dialogs
+ * of several preferences reach the disk in one commit, which a thread other
+ * than the UI thread can wait for.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SharedResourcesTest {
+    private static final int PREFERENCE_COUNT = 50;
+    private static final int SELECTION_COUNT = 5;
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long WRITE_TIMEOUT_MS = 5000;
+
+    private DialogHarness mHarness;
+    private ListPreferenceWithEditText[] mPreferences;
+
+    @Before
+    public void setUp() {
+        mHarness = new DialogHarness(10);
+        ShadowSharedPreferencesImpl.reset();
+        ShadowSharedPreferencesEditorImpl.reset();
+        mPreferences = new ListPreferenceWithEditText[PREFERENCE_COUNT];
+        for (int i=0 ; i<PREFERENCE_COUNT ; i++) {
+            mPreferences[i] = mHarness.addPreference("pref_shared_" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        // The writer outlives the test, and is shared with the other tests
+        mPreferences[0].setPersistenceFlushPolicy(PreferenceWriter.FlushPolicy.IMMEDIATE, 0);
+        mHarness.finish();
+    }
+
+    @Test
+    public void preferencesShareOneCoordinator() {
+        PreferenceCoordinator coordinator = PreferenceCoordinator.get(mHarness.getActivity());
+        for (ListPreferenceWithEditText preference : mPreferences) {
+            assertSame(coordinator, ReflectionHelpers.getField(preference, "mCoordinator"));
+            assertSame(coordinator.getWriter(), ReflectionHelpers.getField(preference, "mPrefWriter"));
+            assertSame(coordinator.getHandler(), ReflectionHelpers.getField(preference, "mHandler"));
+        }
+        assertEquals("Editors created by " + PREFERENCE_COUNT + " preferences", 0, ShadowSharedPreferencesImpl.getEditors());
+    }
+
+    /** Select a value in the dialog of each of the first SELECTION_COUNT preferences */
+    private void selectInSeveralPreferences() {
+        for (int i=0 ; i<SELECTION_COUNT ; i++) {
+            mHarness.setPreference(mPreferences[i]);
+            mHarness.open();
+            mHarness.clickRow(i);
+        }
+    }
+
+    @Test
+    public void immediatePolicyCommitsEverySelection() throws Exception {
+        selectInSeveralPreferences();
+        mHarness.awaitWrites();
+        assertEquals(SELECTION_COUNT, ShadowSharedPreferencesEditorImpl.getCommits());
+    }
+
+    @Test
+    public void deferredPolicyCoalescesSelectionsOfAllPreferences() throws Exception {
+        mPreferences[0].setPersistenceFlushPolicy(PreferenceWriter.FlushPolicy.DEFERRED, FLUSH_DELAY_MS);
+        selectInSeveralPreferences();
+        assertEquals("Commits before the flush delay passed", 0, ShadowSharedPreferencesEditorImpl.getCommits());
+
+        ShadowLooper.idleMainLooper(FLUSH_DELAY_MS);
+        mHarness.awaitWrites();
+        assertEquals(1, ShadowSharedPreferencesEditorImpl.getCommits());
+        for (int i=0 ; i<SELECTION_COUNT ; i++) {
+            assertEquals(mPreferences[i].getEntryValues()[i].toString(),
+                    mPreferences[i].getSharedPreferences().getString(mPreferences[i].getKey(), null));
+        }
+    }
+
+    @Test
+    public void pausingTheScreenFlushesDeferredSelections() throws Exception {
+        mPreferences[0].setPersistenceFlushPolicy(PreferenceWriter.FlushPolicy.DEFERRED, FLUSH_DELAY_MS);
+        selectInSeveralPreferences();
+        mHarness.pause();
+        // The flush delay doesn't pass (the main looper's clock stands still),
+        // so only onPause() can have flushed the selections
+        long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MS;
+        while (ShadowSharedPreferencesEditorImpl.getCommits() == 0  &&  System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Commits after onPause()", 1, ShadowSharedPreferencesEditorImpl.getCommits());
+    }
+
+    @Test
+    public void awaitPendingWritesWorksOffTheUiThread() throws Exception {
+        mPreferences[0].setPersistenceFlushPolicy(PreferenceWriter.FlushPolicy.DEFERRED, FLUSH_DELAY_MS);
+        selectInSeveralPreferences();
+        final boolean[] written = new boolean[1];
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    written[0] = mPreferences[0].awaitPendingWrites(WRITE_TIMEOUT_MS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waiter.start();
+        // The flush is posted to the UI thread: run it while the waiter waits
+        while (waiter.isAlive()) {
+            ShadowLooper.runUiThreadTasks();
+            waiter.join(10);
+        }
+        assertTrue("The writes completed within the timeout", written[0]);
+        assertEquals(1, ShadowSharedPreferencesEditorImpl.getCommits());
+    }
+}
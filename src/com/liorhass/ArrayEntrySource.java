@@ -0,0 +1,66 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.HashMap;
+
+/**
+ * An EntrySource backed by fully materialized arrays (e.g. the arrays defined
+ * by the android:entries and android:entryValues attributes).
+ */
+public class ArrayEntrySource implements EntrySource {
+    private final CharSequence[] mEntries;
+    private final CharSequence[] mEntryValues;
+    private final int mCount;
+    private HashMap<String, Integer> mValueToIndex = null; // Built on first lookup
+
+    /**
+     * @param count Number of items of the arrays that are used as entries. This
+     *        lets the caller exclude the placeholder item of the custom row.
+     */
+    public ArrayEntrySource(CharSequence[] entries, CharSequence[] entryValues, int count) {
+        mEntries     = entries;
+        mEntryValues = entryValues;
+        mCount       = count;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public CharSequence getEntry(int index) {
+        return mEntries[index];
+    }
+
+    @Override
+    public CharSequence getEntryValue(int index) {
+        return mEntryValues[index];
+    }
+
+    @Override
+    public int indexOfValue(String value) {
+        if (value == null) {
+            return NOT_FOUND;
+        }
+        buildIndex();
+        Integer index = mValueToIndex.get(value);
+        return (index == null ? NOT_FOUND : index);
+    }
+
+    /** Build the value-to-index lookup structure now, instead of on the first lookup */
+    void buildIndex() {
+        if (mValueToIndex != null) {
+            return;
+        }
+        mValueToIndex = new HashMap<String, Integer>(mCount * 4 / 3 + 1);
+        for (int i=0 ; i<mCount ; i++) {
+            String v = mEntryValues[i].toString();
+            if (!mValueToIndex.containsKey(v)) { // On duplicates, the first entry wins
+                mValueToIndex.put(v, i);
+            }
+        }
+    }
+}
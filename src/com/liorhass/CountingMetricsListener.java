@@ -0,0 +1,93 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * A DialogMetricsListener that counts the dialog's operations and sums their
+ * durations, e.g. to compare a run against a baseline (number of inflated
+ * rows, bound rows per scroll, prepare time), or to log the totals with
+ * toString().
+ * onPersisted() is called on a background thread, so all the methods are
+ * synchronized.
+ */
+public class CountingMetricsListener implements DialogMetricsListener {
+    private int mPrepareCount;
+    private long mPrepareNanos;
+    private int mInflatedRows;
+    private long mInflateNanos;
+    private int mBoundRows;
+    private int mReusedRows;
+    private long mBindNanos;
+    private int mKeyboardShownCount;
+    private int mPersistCount;
+    private long mPersistNanos;
+
+    @Override
+    public synchronized void onPrepareDialog(long durationNanos) {
+        mPrepareCount++;
+        mPrepareNanos += durationNanos;
+    }
+
+    @Override
+    public synchronized void onRowInflated(int rowType, long durationNanos) {
+        mInflatedRows++;
+        mInflateNanos += durationNanos;
+    }
+
+    @Override
+    public synchronized void onRowBound(int rowType, long durationNanos, boolean reused) {
+        mBoundRows++;
+        if (reused) {
+            mReusedRows++;
+        }
+        mBindNanos += durationNanos;
+    }
+
+    @Override
+    public synchronized void onKeyboardShown(long latencyNanos) {
+        mKeyboardShownCount++;
+    }
+
+    @Override
+    public synchronized void onPersisted(long durationNanos) {
+        mPersistCount++;
+        mPersistNanos += durationNanos;
+    }
+
+    /** Zero all the counters (e.g. between the stages of a measurement) */
+    public synchronized void reset() {
+        mPrepareCount = 0;
+        mPrepareNanos = 0;
+        mInflatedRows = 0;
+        mInflateNanos = 0;
+        mBoundRows    = 0;
+        mReusedRows   = 0;
+        mBindNanos    = 0;
+        mKeyboardShownCount = 0;
+        mPersistCount = 0;
+        mPersistNanos = 0;
+    }
+
+    public synchronized int getPrepareCount()       { return mPrepareCount; }
+    public synchronized long getPrepareNanos()      { return mPrepareNanos; }
+    public synchronized int getInflatedRows()       { return mInflatedRows; }
+    public synchronized long getInflateNanos()      { return mInflateNanos; }
+    /** @return Number of getView() calls (every bound row, whether inflated or reused) */
+    public synchronized int getBoundRows()          { return mBoundRows; }
+    public synchronized int getReusedRows()         { return mReusedRows; }
+    public synchronized long getBindNanos()         { return mBindNanos; }
+    public synchronized int getKeyboardShownCount() { return mKeyboardShownCount; }
+    /** @return Number of batches committed to the SharedPreferences */
+    public synchronized int getPersistCount()       { return mPersistCount; }
+    public synchronized long getPersistNanos()      { return mPersistNanos; }
+
+    @Override
+    public synchronized String toString() {
+        return "prepare=" + mPrepareCount + "/" + (mPrepareNanos / 1000) + "us" +
+               " inflated=" + mInflatedRows + "/" + (mInflateNanos / 1000) + "us" +
+               " bound=" + mBoundRows + "(reused " + mReusedRows + ")/" + (mBindNanos / 1000) + "us" +
+               " keyboard=" + mKeyboardShownCount +
+               " persisted=" + mPersistCount + "/" + (mPersistNanos / 1000) + "us";
+    }
+}
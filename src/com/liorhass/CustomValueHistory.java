@@ -0,0 +1,92 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.ArrayList;
+
+/**
+ * A bounded list of recently used custom values, most recent first. When a
+ * value is added and the list is full, the least recently used value is evicted.
+ * The whole list is stored as a single string (see encode() and decode()), so
+ * it takes one preference entry regardless of its size.
+ */
+class CustomValueHistory {
+    // Separates the values in the encoded string. The ASCII "unit separator"
+    // control character is not something users type into a text field.
+    private static final char SEPARATOR = '\u001F';
+
+    private final int mMaxSize;
+    private final ArrayList<String> mValues;
+
+    public CustomValueHistory(int maxSize) {
+        mMaxSize = Math.max(0, maxSize);
+        mValues  = new ArrayList<String>(mMaxSize + 1);
+    }
+
+    /** @return A history of up to maxSize values, read from a string that was created by encode() */
+    public static CustomValueHistory decode(String encoded, int maxSize) {
+        CustomValueHistory history = new CustomValueHistory(maxSize);
+        if (encoded == null  ||  encoded.length() == 0) {
+            return history;
+        }
+        int start = 0;
+        while (start <= encoded.length()  &&  history.mValues.size() < history.mMaxSize) {
+            int end = encoded.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = encoded.length();
+            }
+            if (end > start) {
+                history.mValues.add(encoded.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return history;
+    }
+
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0 ; i<mValues.size() ; i++) {
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+            sb.append(mValues.get(i));
+        }
+        return sb.toString();
+    }
+
+    /** Make value the most recently used one (adding it, or moving it to the front) */
+    public void add(String value) {
+        if (mMaxSize == 0  ||  value == null  ||  value.length() == 0  ||  value.indexOf(SEPARATOR) >= 0) {
+            return;
+        }
+        mValues.remove(value);
+        mValues.add(0, value);
+        if (mValues.size() > mMaxSize) {
+            mValues.remove(mValues.size() - 1);
+        }
+    }
+
+    /** Remove all the values that match a predefined entry (they have rows of their own) */
+    public void removeEntriesOf(EntrySource source) {
+        for (int i=mValues.size()-1 ; i>=0 ; i--) {
+            if (source.indexOfValue(mValues.get(i)) != EntrySource.NOT_FOUND) {
+                mValues.remove(i);
+            }
+        }
+    }
+
+    /** @return The index of value in the history, or -1 */
+    public int indexOf(String value) {
+        return mValues.indexOf(value);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    /** @return The i'th most recently used value */
+    public String get(int i) {
+        return mValues.get(i);
+    }
+}
@@ -0,0 +1,39 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * Receives timing measurements of a ListPreferenceWithEditText dialog. Install
+ * one with ListPreferenceWithEditText.setMetricsListener(). When no listener
+ * is installed, nothing is measured.
+ * All durations are in nanoseconds (measured with System.nanoTime()).
+ * Except for onPersisted(), all the methods are called on the UI thread, in
+ * the middle of the measured operation, so implementations should be quick.
+ */
+public interface DialogMetricsListener {
+    public static final int ROW_TYPE_NORMAL = 0;
+    public static final int ROW_TYPE_CUSTOM = 1;
+
+    /** onPrepareDialogBuilder() took durationNanos */
+    public void onPrepareDialog(long durationNanos);
+
+    /** Inflating a row of type rowType (ROW_TYPE_NORMAL or ROW_TYPE_CUSTOM) took durationNanos */
+    public void onRowInflated(int rowType, long durationNanos);
+
+    /**
+     * Binding a row of type rowType took durationNanos (including the
+     * inflation, if the row was inflated).
+     * @param reused true if the row's view was recycled, false if it was inflated
+     */
+    public void onRowBound(int rowType, long durationNanos, boolean reused);
+
+    /** The soft keyboard was requested latencyNanos after the custom field got the focus */
+    public void onKeyboardShown(long latencyNanos);
+
+    /**
+     * A selected value reached the SharedPreferences, durationNanos after it
+     * was handed to the background writer. Called on the writer's background thread.
+     */
+    public void onPersisted(long durationNanos);
+}
@@ -0,0 +1,202 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.Arrays;
+
+/**
+ * Filters the entries of an EntrySource by a prefix of their values.
+ * The values are sorted once (see SortedValues, which can be shared by all the
+ * dialogs of the same entries). The entries whose values start with a prefix
+ * form a contiguous range of the sorted values, which is found with two binary
+ * searches. When the new prefix extends the previous one (the user typed
+ * another character), the search is limited to the previous range, and the
+ * previous result set is refined instead of rebuilt.
+ * The result is kept in the source's order, so filtering doesn't reorder the rows.
+ */
+class EntryPrefixIndex {
+    /**
+     * The values of a source, sorted. Immutable once built, so it can be
+     * cached and shared (see EntryTableCache).
+     */
+    static class SortedValues {
+        final String[] mSortedValues;
+        final int[] mSortedToSource;  // Source index of each item of mSortedValues
+        final int[] mSourceToSorted;  // Position in mSortedValues of each source index
+
+        /**
+         * Reads every value of source once. A PagedEntrySource (also a wrapped
+         * one) is read without disturbing its window of pages.
+         */
+        SortedValues(EntrySource source) {
+            int count = source.getCount();
+            final String[] values = new String[count];
+            PagedEntrySource.copyValues(source, values);
+
+            int[] order = new int[count];
+            for (int i=0 ; i<count ; i++) {
+                order[i] = i;
+            }
+            // A stable sort, so equal values keep the source order
+            new IndexMergeSort() {
+                @Override
+                protected int compare(int a, int b) {
+                    return values[a].compareTo(values[b]);
+                }
+            }.sort(order);
+
+            mSortedValues   = new String[count];
+            mSortedToSource = order;
+            mSourceToSorted = new int[count];
+            for (int i=0 ; i<count ; i++) {
+                mSortedValues[i] = values[order[i]];
+                mSourceToSorted[order[i]] = i;
+            }
+        }
+
+        int size() {
+            return mSortedValues.length;
+        }
+    }
+
+    private final String[] mSortedValues;
+    private final int[] mSortedToSource;
+    private final int[] mSourceToSorted;
+
+    private String mPrefix = "";
+    private int mRangeStart;              // Range of mSortedValues that matches mPrefix
+    private int mRangeEnd;                // (exclusive)
+    private int[] mResult;                // Source indices of the matching entries, in source order
+    private int mResultCount;
+
+    public EntryPrefixIndex(EntrySource source) {
+        this(new SortedValues(source));
+    }
+
+    /** A filter (with its own state) over values that were already sorted */
+    public EntryPrefixIndex(SortedValues sorted) {
+        mSortedValues   = sorted.mSortedValues;
+        mSortedToSource = sorted.mSortedToSource;
+        mSourceToSorted = sorted.mSourceToSorted;
+        mResult = new int[mSortedValues.length];
+        clearFilter();
+    }
+
+    /** @return true if a non-empty prefix is set, i.e. some entries may be filtered out */
+    public boolean isFiltering() {
+        return mPrefix.length() > 0;
+    }
+
+    /** @return Number of entries that match the current prefix */
+    public int getCount() {
+        return mResultCount;
+    }
+
+    /** @return The source index of the i'th matching entry */
+    public int getSourceIndex(int i) {
+        return mResult[i];
+    }
+
+    /**
+     * Keep only the entries whose values start with prefix.
+     * @return true if the result set changed
+     */
+    public boolean setPrefix(String prefix) {
+        if (prefix == null || prefix.length() == 0) {
+            if (!isFiltering()) {
+                return false;
+            }
+            clearFilter();
+            return true;
+        }
+        if (prefix.equals(mPrefix)) {
+            return false;
+        }
+
+        boolean refine = prefix.startsWith(mPrefix);
+        int searchStart = refine ? mRangeStart : 0;
+        int searchEnd   = refine ? mRangeEnd   : mSortedValues.length;
+        int newStart = lowerBound(prefix, searchStart, searchEnd);
+        int newEnd   = upperBound(prefix, newStart, searchEnd);
+        int oldCount = mResultCount;
+
+        if (refine) {
+            // Every entry that matches the new prefix also matched the old one,
+            // so just drop the entries that fell out of the range.
+            int n = 0;
+            for (int i=0 ; i<mResultCount ; i++) {
+                int sorted = mSourceToSorted[mResult[i]];
+                if (sorted >= newStart  &&  sorted < newEnd) {
+                    mResult[n++] = mResult[i];
+                }
+            }
+            mResultCount = n;
+        }
+        else if ((newEnd - newStart) > mSortedValues.length / 16) {
+            // A large range: a linear pass over the source indices (which keeps
+            // the source order) is cheaper than sorting the range.
+            int n = 0;
+            for (int sourceIndex=0 ; sourceIndex<mSourceToSorted.length ; sourceIndex++) {
+                int sorted = mSourceToSorted[sourceIndex];
+                if (sorted >= newStart  &&  sorted < newEnd) {
+                    mResult[n++] = sourceIndex;
+                }
+            }
+            mResultCount = n;
+        }
+        else {
+            mResultCount = newEnd - newStart;
+            System.arraycopy(mSortedToSource, newStart, mResult, 0, mResultCount);
+            Arrays.sort(mResult, 0, mResultCount); // Back to source order
+        }
+
+        mPrefix     = prefix;
+        mRangeStart = newStart;
+        mRangeEnd   = newEnd;
+        return refine ? (mResultCount != oldCount) : true;
+    }
+
+    private void clearFilter() {
+        mPrefix      = "";
+        mRangeStart  = 0;
+        mRangeEnd    = mSortedValues.length;
+        mResultCount = mSortedValues.length;
+        for (int i=0 ; i<mResultCount ; i++) {
+            mResult[i] = i;
+        }
+    }
+
+    /** @return Index of the first value in [start,end) that is >= prefix or starts with it */
+    private int lowerBound(String prefix, int start, int end) {
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (compareToPrefix(mSortedValues[mid], prefix) < 0) {
+                start = mid + 1;
+            }
+            else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    /** @return Index of the first value in [start,end) that is > prefix and doesn't start with it */
+    private int upperBound(String prefix, int start, int end) {
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (compareToPrefix(mSortedValues[mid], prefix) <= 0) {
+                start = mid + 1;
+            }
+            else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    /** Like compareTo(), but values that start with prefix are considered equal to it */
+    private static int compareToPrefix(String value, String prefix) {
+        return value.startsWith(prefix) ? 0 : value.compareTo(prefix);
+    }
+}
@@ -0,0 +1,29 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * Supplies the "normal" rows (the pre-defined values) of a
+ * ListPreferenceWithEditText dialog. The custom row is not part of the
+ * source; it's always added by the dialog as the last row.
+ * Implementations are accessed only from the UI thread.
+ * @see ArrayEntrySource
+ * @see PagedEntrySource
+ */
+public interface EntrySource {
+    /** Value returned by indexOfValue() when no entry has the requested value */
+    public static final int NOT_FOUND = -1;
+
+    /** @return Number of normal rows */
+    public int getCount();
+
+    /** @return The text displayed for the entry at index */
+    public CharSequence getEntry(int index);
+
+    /** @return The value that is persisted when the entry at index is selected */
+    public CharSequence getEntryValue(int index);
+
+    /** @return The index of the first entry whose value is value, or NOT_FOUND */
+    public int indexOfValue(String value);
+}
@@ -0,0 +1,95 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.LruCache;
+
+/**
+ * A process-wide cache of the entry tables built from the entries/entryValues
+ * array resources, keyed by the resource IDs. All the preferences (of all the
+ * screens) that use the same arrays share one table, including its value-to-index
+ * lookup structure, so opening a dialog doesn't parse or index the arrays again.
+ * The tables are never modified once cached (except for building the sorted
+ * values of the type-ahead filter, once, when first needed). The cache holds up to
+ * MAX_CACHED_TABLES tables (of any size), and is cleared when the configuration (e.g. the locale,
+ * which may change the arrays' content) changes, and on low memory.
+ * All methods should be called from the UI thread.
+ */
+class EntryTableCache {
+    // The cache is bounded by the number of tables, not by their size: the
+    // tables worth caching are the large ones, and a size budget would evict
+    // any table larger than the budget as soon as it's added.
+    private static final int MAX_CACHED_TABLES = 16;
+
+    private static LruCache<String, Table> sTables = null;
+
+    /** A cached table: the source of the normal rows, and the default of the custom field */
+    static class Table {
+        final EntrySource mSource;
+        final String mDefaultCustomValue;
+        private EntryPrefixIndex.SortedValues mSortedValues = null; // Built when first needed
+        Table(EntrySource source, String defaultCustomValue) {
+            mSource             = source;
+            mDefaultCustomValue = defaultCustomValue;
+        }
+
+        /** @return The sorted values behind the type-ahead filter (built once per table) */
+        EntryPrefixIndex.SortedValues getSortedValues() {
+            if (mSortedValues == null) {
+                mSortedValues = new EntryPrefixIndex.SortedValues(mSource);
+            }
+            return mSortedValues;
+        }
+    }
+
+    private EntryTableCache() {}
+
+    /**
+     * @return The table of the given arrays, building it (from entries and
+     * entryValues, which must be the content of the resources) if it's not cached.
+     * @param numeric true to get a table whose values are parsed as numbers (see NumericEntrySource)
+     */
+    static Table get(Context context, int entriesResId, int entryValuesResId, boolean numeric,
+            CharSequence[] entries, CharSequence[] entryValues) {
+        if (sTables == null) {
+            sTables = new LruCache<String, Table>(MAX_CACHED_TABLES);
+            context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks() {
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                    sTables.evictAll();
+                }
+                @Override
+                public void onLowMemory() {
+                    sTables.evictAll();
+                }
+            });
+        }
+
+        String key = entriesResId + ":" + entryValuesResId + (numeric ? ":n" : "");
+        Table table = sTables.get(key);
+        if (table == null) {
+            table = build(entries, entryValues, numeric);
+            sTables.put(key, table);
+        }
+        return table;
+    }
+
+    /** Build a table from the arrays. Their last item belongs to the custom row. */
+    static Table build(CharSequence[] entries, CharSequence[] entryValues, boolean numeric) {
+        ArrayEntrySource arraySource = new ArrayEntrySource(entries, entryValues, entryValues.length-1);
+        EntrySource source;
+        if (numeric) {
+            // Parse the entry values once, so lookups compare numbers
+            source = new NumericEntrySource(arraySource);
+        }
+        else {
+            arraySource.buildIndex(); // Now, so a shared table is never modified
+            source = arraySource;
+        }
+        return new Table(source, entryValues[entryValues.length-1].toString());
+    }
+}
@@ -0,0 +1,42 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * A stable merge sort of an array of indices by the items they refer to,
+ * without boxing the indices. Subclasses compare the items.
+ */
+abstract class IndexMergeSort {
+    /** @return Negative, zero or positive, as item a is less than, equal to, or greater than item b */
+    protected abstract int compare(int a, int b);
+
+    /** Sort indices by their items. Indices of equal items keep their order. */
+    void sort(int[] indices) {
+        sort(indices, new int[indices.length], 0, indices.length);
+    }
+
+    /** Sort indices[start..end), using tmp[start..end) as scratch space */
+    private void sort(int[] indices, int[] tmp, int start, int end) {
+        if (end - start < 2) {
+            return;
+        }
+        int mid = (start + end) >>> 1;
+        sort(indices, tmp, start, mid);
+        sort(indices, tmp, mid, end);
+        if (compare(indices[mid-1], indices[mid]) <= 0) {
+            return; // Already in order
+        }
+        System.arraycopy(indices, start, tmp, start, end - start);
+        int i = start;
+        int j = mid;
+        for (int k=start ; k<end ; k++) {
+            if (j >= end  ||  (i < mid  &&  compare(tmp[i], tmp[j]) <= 0)) {
+                indices[k] = tmp[i++];
+            }
+            else {
+                indices[k] = tmp[j++];
+            }
+        }
+    }
+}
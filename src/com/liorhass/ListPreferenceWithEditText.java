@@ -3,24 +3,28 @@
 //
 package com.liorhass;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
 import android.app.AlertDialog;
 import android.app.AlertDialog.Builder;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
-import android.content.SharedPreferences;
+import android.content.res.TypedArray;
+import android.os.Bundle;
 import android.os.Handler;
 import android.preference.ListPreference;
-import android.preference.PreferenceManager;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewParent;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.inputmethod.InputMethodManager;
@@ -29,45 +33,444 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.RadioButton;
+import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 public class ListPreferenceWithEditText extends ListPreference {
+    /** Values are arbitrary strings (the default) */
+    public static final int VALUE_TYPE_STRING = 0;
+    /** Values are int numbers */
+    public static final int VALUE_TYPE_INT    = 1;
+    /** Values are long numbers */
+    public static final int VALUE_TYPE_LONG   = 2;
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
     private Context mContext;
-    private SharedPreferences mPrefs;
-    private SharedPreferences.Editor mPrefEditor;
+    private PreferenceCoordinator mCoordinator;     // Shared by all the instances that use the same SharedPreferences
+    private PreferenceWriter mPrefWriter;            // The coordinator's writer
+    private Handler mHandler;                        // The coordinator's handler
     private String mPrefKey;
     private String mPrefCustomField;
-    private CharSequence[] mEntries;
-    private CharSequence[] mEntryValues;
-    private Handler mHandler = new Handler();
-    private String mCustomValue = null;
-   
+    private String mPrefHistoryField;
+    private int mHistorySize;
+    private CustomValueHistory mHistory;             // Recently used custom values, loaded when the dialog is opened
+    private int mValueType;
+    private long mMinValue;
+    private long mMaxValue;
+    private String mCachedValueString = null;        // The value from which mCachedValue was parsed
+    private long mCachedValue;
+    private EntrySource mEntrySource = null;        // Set by the application. null means: use the entries/entryValues arrays
+    private NumericEntrySource mNumericEntrySource = null; // mEntrySource with parsed values (numeric types). Built on first use
+    private String mDefaultCustomValue = "";
+    private int mEntriesResId;                      // The resource IDs of the arrays (0 if not known), which
+    private int mEntryValuesResId;                  // identify their table in EntryTableCache
+    private EntrySource mSource;                    // The source used by the currently open dialog
+    private String mSourceDefaultCustomValue;
+    private SelectionStateMachine mSelection;         // The selection state of the currently open dialog
+    private boolean mFilterEntries = false;
+    private EntryPrefixIndex.SortedValues mPrefixValues = null; // Of the currently open dialog, if filtering
+    private boolean mSortedNumericIndex = false;
+    private DialogMetricsListener mMetricsListener = null;
+    private long mLastKeyboardLatencyNanos = -1;
+    private ArrayList<PreferenceCoordinator.ListenerRegistration> mValueChangeListeners = null; // Allocated on first use
+    private SummaryFormatter mSummaryFormatter = null;
+    private CustomValueValidator mCustomValueValidator = null;
+    private ExecutorService mValidationExecutor = null;
+    private long mValidationDelayMillis;
+    private ListPreferenceWithEditTextAdapter mAdapter = null;  // The adapter of the currently open dialog
+    private RowViewPool mRowViewPool = null;         // Only in prewarm mode
+
+    /**
+     * Interface definition for a callback to be invoked when the user selects a
+     * new value in the dialog.
+     */
+    public interface OnValueChangeListener {
+        /**
+         * Called once per user action that changed the value (i.e. once even
+         * though both the value and the last custom value are persisted).
+         * @param preference The preference whose value changed
+         * @param oldValue The value before the change (may be null)
+         * @param newValue The selected value
+         * @param isCustom true if newValue was entered in the custom field,
+         *        false if it's one of the pre-defined entries
+         */
+        void onValueChanged(ListPreferenceWithEditText preference, String oldValue, String newValue, boolean isCustom);
+    }
+
+    /**
+     * Checks custom values beyond the value type's checks (e.g. whether the
+     * hardware supports a rate). Called on a background thread, so it may be
+     * slow, but it may be interrupted when the value changes again.
+     */
+    public interface CustomValueValidator {
+        /**
+         * @return null if value may be persisted, otherwise an error message
+         *         that is shown next to the custom field
+         */
+        CharSequence validate(ListPreferenceWithEditText preference, String value);
+    }
+
+    /** Formats the summary line of the preference from its value (see SummaryBinder) */
+    public interface SummaryFormatter {
+        /**
+         * @param value The value of the preference (may be null if it wasn't set yet)
+         * @return The summary line to display
+         */
+        CharSequence formatSummary(ListPreferenceWithEditText preference, String value);
+    }
+
     public ListPreferenceWithEditText(Context context, AttributeSet attrs) {
         super(context, attrs);
 
-        mContext    = context;
-        mPrefs      = PreferenceManager.getDefaultSharedPreferences(mContext);
-        mPrefEditor = mPrefs.edit();
+        mContext     = context;
+        mCoordinator = PreferenceCoordinator.get(mContext);
+        mPrefWriter  = mCoordinator.getWriter();
+        mHandler     = mCoordinator.getHandler();
         mPrefKey    = getKey(); // Get the content of "android:key" field in our record at preferences.xml
         mPrefCustomField = mPrefKey + "_custom"; // Store the last value of the custom field
+        mPrefHistoryField = mPrefKey + "_history"; // Store the recently used custom values (all in one entry)
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ListPreferenceWithEditText);
+        mHistorySize = a.getInt(R.styleable.ListPreferenceWithEditText_customHistorySize, 0);
+        mValueType   = a.getInt(R.styleable.ListPreferenceWithEditText_valueType, VALUE_TYPE_STRING);
+        mMinValue = (a.hasValue(R.styleable.ListPreferenceWithEditText_minValue) ?
+                a.getInt(R.styleable.ListPreferenceWithEditText_minValue, 0) : getTypeMinValue(mValueType));
+        mMaxValue = (a.hasValue(R.styleable.ListPreferenceWithEditText_maxValue) ?
+                a.getInt(R.styleable.ListPreferenceWithEditText_maxValue, 0) : getTypeMaxValue(mValueType));
+        mSortedNumericIndex = a.getBoolean(R.styleable.ListPreferenceWithEditText_sortedNumericIndex, false);
+        a.recycle();
+        if (attrs != null) {
+            mEntriesResId     = attrs.getAttributeResourceValue(ANDROID_NS, "entries", 0);
+            mEntryValuesResId = attrs.getAttributeResourceValue(ANDROID_NS, "entryValues", 0);
+        }
     }
 
     public ListPreferenceWithEditText(Context context) {
         this(context, null);
     }
+
+    /**
+     * Use source, instead of the entries and entryValues arrays, as the "normal"
+     * rows of the dialog. This allows large or computed lists whose values are
+     * loaded lazily (see PagedEntrySource).
+     * @param source The normal rows. Unlike the arrays, the source doesn't
+     *        include a placeholder item for the custom row. null reverts to
+     *        using the arrays. With a numeric value type, the values of the
+     *        source are parsed once (on the first dialog opening) and kept, so
+     *        call setEntrySource() again after they change.
+     *        Opening the dialog looks up the current value and the custom
+     *        value history with indexOfValue(), so a large source must
+     *        override it with a lookup that doesn't scan all the entries.
+     * @param defaultCustomValue The value of the custom field when no custom value was set yet
+     */
+    public void setEntrySource(EntrySource source, String defaultCustomValue) {
+        if (source != mEntrySource) {
+            mNumericEntrySource = null;
+        }
+        mEntrySource        = source;
+        mDefaultCustomValue = defaultCustomValue;
+    }
+
+    /**
+     * Pre-inflate row views, and from now on keep up to maxNormalRows row views
+     * in a pool across dialog openings, so opening the dialog doesn't inflate
+     * its rows from scratch. Best called while the UI thread is idle (e.g. from
+     * an IdleHandler queued in the fragment's onCreate()).
+     * The pool holds views that were created with this preference's context, so
+     * call releaseRowViewPool() when the screen is destroyed.
+     */
+    public void prewarmRows(int maxNormalRows) {
+        if (mRowViewPool == null) {
+            mRowViewPool = new RowViewPool(maxNormalRows);
+        }
+        mRowViewPool.prewarm(mContext);
+    }
+
+    /** Drop the pooled row views (see prewarmRows()) and stop pooling */
+    public void releaseRowViewPool() {
+        if (mRowViewPool != null) {
+            mRowViewPool.clear();
+            mRowViewPool = null;
+        }
+    }
+
+    /**
+     * Set the type of the values (same as the valueType XML attribute).
+     * With VALUE_TYPE_INT or VALUE_TYPE_LONG all the entry values must be
+     * integer numbers, entry values are compared as numbers, and custom values
+     * that are not numbers, or are out of the [minValue,maxValue] range, can't
+     * be persisted.
+     */
+    public void setValueType(int valueType, long minValue, long maxValue) {
+        if (valueType != mValueType) {
+            mNumericEntrySource = null;
+        }
+        mValueType = valueType;
+        mMinValue  = Math.max(minValue, getTypeMinValue(valueType));
+        mMaxValue  = Math.min(maxValue, getTypeMaxValue(valueType));
+    }
+
+    private static long getTypeMinValue(int valueType) {
+        return (valueType == VALUE_TYPE_INT ? Integer.MIN_VALUE : Long.MIN_VALUE);
+    }
+
+    private static long getTypeMaxValue(int valueType) {
+        return (valueType == VALUE_TYPE_INT ? Integer.MAX_VALUE : Long.MAX_VALUE);
+    }
+
+    private boolean isNumeric() {
+        return mValueType == VALUE_TYPE_INT  ||  mValueType == VALUE_TYPE_LONG;
+    }
+
+    /** @return true if the currently open dialog shows its rows sorted by value */
+    private boolean isSortedMode() {
+        return mSortedNumericIndex  &&  mSource instanceof NumericEntrySource;
+    }
+
+    /**
+     * @return The value as a number (with a numeric value type). The value is
+     * parsed only when it changes, so calling this repeatedly is cheap.
+     * @param defValue Returned if the value wasn't set yet, or is not a number
+     */
+    public long getLongValue(long defValue) {
+        String value = mPrefWriter.getString(mPrefKey, null);
+        if (value == null) {
+            return defValue;
+        }
+        if (!value.equals(mCachedValueString)) {
+            try {
+                mCachedValue = NumericEntrySource.parse(value);
+            }
+            catch (NumberFormatException e) {
+                return defValue;
+            }
+            mCachedValueString = value;
+        }
+        return mCachedValue;
+    }
+
+    /** Same as getLongValue(), for the VALUE_TYPE_INT value type */
+    public int getIntValue(int defValue) {
+        long value = getLongValue(defValue);
+        return (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? defValue : (int)value);
+    }
+
+    /** @return true if value can be persisted as a custom value */
+    private boolean isAcceptableCustomValue(String value) {
+        if (!isNumeric()) {
+            return true;
+        }
+        try {
+            long number = NumericEntrySource.parse(value);
+            return number >= mMinValue  &&  number <= mMaxValue;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Set the number of recently used custom values that are shown as rows
+     * between the pre-defined entries and the custom field (same as the
+     * customHistorySize XML attribute). 0 disables the history.
+     */
+    public void setCustomHistorySize(int size) {
+        mHistorySize = size;
+    }
+
+    @Override
+    public void setEntries(CharSequence[] entries) {
+        super.setEntries(entries);
+        mEntriesResId = 0; // No longer the resource's content, so don't use the cached table
+    }
+
+    @Override
+    public void setEntryValues(CharSequence[] entryValues) {
+        super.setEntryValues(entryValues);
+        mEntryValuesResId = 0;
+    }
+
+    /**
+     * When enabled, typing in the custom field narrows the normal rows to those
+     * whose values start with the typed text. The values behind the filter are
+     * sorted when the dialog opens (once per process for resource arrays, see
+     * EntryTableCache), and every keystroke that extends the text only refines
+     * the previous result. With an EntrySource, all its values are read when
+     * the dialog opens.
+     */
+    public void setFilterEntriesEnabled(boolean enabled) {
+        mFilterEntries = enabled;
+    }
+
+    /**
+     * Same as the sortedNumericIndex XML attribute. When enabled (and the value
+     * type is numeric), the normal rows are shown sorted by value, the list has
+     * fast-scroll sections, and once the user stops typing in the custom field
+     * the list jumps to the pre-defined value nearest to the typed number. Both
+     * are binary searches over the index that is built when the dialog opens,
+     * so long lists stay quick to navigate. Filtering (see
+     * setFilterEntriesEnabled()) is not done in this mode.
+     */
+    public void setSortedNumericIndexEnabled(boolean enabled) {
+        mSortedNumericIndex = enabled;
+    }
+
+    /**
+     * Selected values are committed on a background thread. By default every
+     * selection is flushed right away. With the DEFERRED policy, writes that
+     * arrive within delayMillis of each other are coalesced into one commit.
+     * The writer is shared (see PreferenceCoordinator), so the policy applies
+     * to all the preferences of the screen. With DEFERRED, the host screen
+     * must call flushPendingWrites() (of any of its preferences) in onPause():
+     * until then the selections exist only in memory.
+     */
+    public void setPersistenceFlushPolicy(PreferenceWriter.FlushPolicy policy, long delayMillis) {
+        mPrefWriter.setFlushPolicy(policy, delayMillis);
+    }
+
+    /**
+     * Start committing any buffered value now, instead of waiting for the flush
+     * policy. The writer is shared, so this flushes the values of all the
+     * preferences of the screen. Call it from the screen's onPause().
+     */
+    public void flushPendingWrites() {
+        mPrefWriter.flush();
+    }
+
+    /**
+     * Flush, and block until all the values written so far reached the disk.
+     * Meant for tests. May be called from any thread: the flush is posted to
+     * the UI thread, and only the waiting is done on the calling thread (on
+     * the UI thread it blocks the UI on the disk).
+     * @return true if the writes completed within the timeout
+     */
+    public boolean awaitPendingWrites(long timeoutMillis) throws InterruptedException {
+        return mPrefWriter.awaitFlush(timeoutMillis);
+    }
     
+    /**
+     * Report the durations of the dialog's stages (preparing, inflating and
+     * binding rows, showing the keyboard, persisting) to listener.
+     * @param listener null to stop measuring
+     */
+    public void setMetricsListener(DialogMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
+    /**
+     * @return How long it took, the last time the custom field got the focus,
+     * until the soft keyboard was shown (in milliseconds). -1 if not measured yet.
+     */
+    public long getLastKeyboardLatencyMillis() {
+        return (mLastKeyboardLatencyNanos < 0 ? -1 : mLastKeyboardLatencyNanos / 1000000);
+    }
+
+    /**
+     * Register a callback to be invoked when the user selects a new value.
+     * Unlike an OnSharedPreferenceChangeListener, the callback is invoked once
+     * per selection. Must be called from the UI thread.
+     * @param executor The executor on which the callback is invoked (e.g. a
+     *        background executor for listeners that do slow work). null to
+     *        invoke it directly on the UI thread.
+     */
+    public void addOnValueChangeListener(OnValueChangeListener listener, Executor executor) {
+        mValueChangeListeners = PreferenceCoordinator.addListener(mValueChangeListeners, listener, executor);
+    }
+
+    /** Unregister a callback that was registered with addOnValueChangeListener() */
+    public void removeOnValueChangeListener(OnValueChangeListener listener) {
+        PreferenceCoordinator.removeListener(mValueChangeListeners, listener);
+    }
+
+    /**
+     * Validate custom values with validator. Once the user stops typing for
+     * delayMillis, the value is checked on executor, and the "OK" button is
+     * enabled only if it's valid (otherwise the error is shown in the custom
+     * field). A check whose value is no longer current is cancelled, and its
+     * result ignored.
+     * @param executor null to use a shared background thread
+     */
+    public void setCustomValueValidator(CustomValueValidator validator, ExecutorService executor, long delayMillis) {
+        mCustomValueValidator  = validator;
+        mValidationExecutor    = executor;
+        mValidationDelayMillis = delayMillis;
+    }
+
+    /**
+     * Set how the summary line is derived from the value. By default the value
+     * itself is the summary.
+     */
+    public void setSummaryFormatter(SummaryFormatter formatter) {
+        mSummaryFormatter = formatter;
+    }
+
+    /** Set the summary line according to value, using the summary formatter */
+    public void updateSummary(String value) {
+        if (mSummaryFormatter != null) {
+            setSummary(mSummaryFormatter.formatSummary(this, value));
+        }
+        else {
+            setSummary(value == null ? "" : value);
+        }
+    }
+
     @Override
     protected void onPrepareDialogBuilder(Builder builder) {
-        mEntries     = getEntries();
-        mEntryValues = getEntryValues();
-        mCustomValue = null; // Forget previous custom value (possible if the user set a custom value and exited with the "Cancel" button)
+        long startNanos = (mMetricsListener != null ? System.nanoTime() : 0);
+        EntryTableCache.Table table = null;
 
-        if (mEntries == null || mEntryValues == null) {
-            throw new IllegalStateException(
-                    "ListPreference requires an entries array and an entryValues array.");
+        if (mEntrySource != null) {
+            mSource = mEntrySource;
+            if (isNumeric()  &&  !(mEntrySource instanceof NumericEntrySource)) {
+                // Parse the entry values once per source (not once per dialog
+                // opening), so lookups compare numbers
+                if (mNumericEntrySource == null) {
+                    mNumericEntrySource = new NumericEntrySource(mEntrySource);
+                }
+                mSource = mNumericEntrySource;
+            }
+            mSourceDefaultCustomValue = mDefaultCustomValue;
+        }
+        else {
+            CharSequence[] entries     = getEntries();
+            CharSequence[] entryValues = getEntryValues();
+            if (entries == null || entryValues == null) {
+                throw new IllegalStateException(
+                        "ListPreference requires an entries array and an entryValues array.");
+            }
+            // The last item of the arrays belongs to the custom row. Its value
+            // is the default value of the custom field. Arrays that come from
+            // resources are parsed and indexed once per process, and shared.
+            if (mEntriesResId != 0  &&  mEntryValuesResId != 0) {
+                table = EntryTableCache.get(mContext, mEntriesResId, mEntryValuesResId, isNumeric(), entries, entryValues);
+            }
+            else {
+                table = EntryTableCache.build(entries, entryValues, isNumeric());
+            }
+            mSource = table.mSource;
+            mSourceDefaultCustomValue = table.mDefaultCustomValue;
         }
+        if (mFilterEntries  &&  !isSortedMode()) {
+            // Sort the values for the type-ahead filter now, rather than on the
+            // first keystroke. The sorted values of resource arrays are cached
+            // with their table, so they're sorted once per process.
+            mPrefixValues = (table != null ? table.getSortedValues() : new EntryPrefixIndex.SortedValues(mSource));
+        }
+
+        // Read the current value once per dialog opening, so binding a row doesn't
+        // need to go back to the SharedPreferences or scan the entry values.
+        // A new state machine also forgets the previous custom value (possible if
+        // the user set a custom value and exited with the "Cancel" button).
+        mHistory = CustomValueHistory.decode(
+                (mHistorySize > 0 ? mPrefWriter.getString(mPrefHistoryField, null) : null), mHistorySize);
+        mHistory.removeEntriesOf(mSource);
+        mSelection = new SelectionStateMachine(mSource, mHistory,
+                mPrefWriter.getString(mPrefKey, null),
+                mPrefWriter.getString(mPrefCustomField, mSourceDefaultCustomValue));
 
-        builder.setAdapter(new ListPreferenceWithEditTextAdapter(), null);
+        mAdapter = new ListPreferenceWithEditTextAdapter();
+        builder.setAdapter(mAdapter, null);
     
         // Add an "OK" button.
         // Unlike a typical ListPreferences, we need an OK button because we have
@@ -77,77 +480,325 @@ public class ListPreferenceWithEditText extends ListPreference {
             new OnClickListener() {
                 @Override
                 public void onClick(DialogInterface dialog, int which) {
-                    mPrefEditor.putString(mPrefKey, mCustomValue);
-                    mPrefEditor.putString(mPrefCustomField, mCustomValue);
-                    mPrefEditor.commit();
+                    // The button is disabled while the custom value is unacceptable,
+                    // but check again, to never persist such a value.
+                    if (!isAcceptableCustomValue(mSelection.getCustomValue())  ||
+                            (mAdapter != null  &&  !mAdapter.isValidated(mSelection.getCustomValue()))) {
+                        return;
+                    }
+                    String customValue = mSelection.onOkClicked();
+                    if (isNumeric()) {
+                        // Persist the value in a canonical form (e.g. without leading zeros)
+                        customValue = Long.toString(NumericEntrySource.parse(customValue));
+                    }
+                    persistSelection(customValue, true);
                 }
             });
+
+        if (mMetricsListener != null) {
+            mMetricsListener.onPrepareDialog(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    protected void showDialog(Bundle state) {
+        super.showDialog(state);
+        // The dialog now exists. Prepare it for the custom field.
+        Dialog dialog = getDialog();
+        if (dialog instanceof AlertDialog  &&  mAdapter != null) {
+            mAdapter.onDialogShown((AlertDialog)dialog);
+        }
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        super.onDialogClosed(positiveResult);
+        if (mAdapter != null) {
+            // Nothing of the closed dialog may outlive it: its pending callbacks,
+            // views and per-dialog state are dropped here (with a pool, the rows
+            // are kept for the next time the dialog is opened).
+            mAdapter.tearDown(mRowViewPool);
+            mAdapter = null;
+        }
+        mSelection = null;
+        mSource    = null;
+        mHistory   = null;
+        mPrefixValues = null;
+    }
+
+    /**
+     * Persist a value the user selected, and notify the value-change listeners
+     * (once, if the value changed).
+     * @param isCustom true if the value was entered in the custom field
+     */
+    private void persistSelection(String newValue, boolean isCustom) {
+        String oldValue = mSelection.getInitialValue();
+
+        // With a custom value, all the keys are written in one batch, off the UI thread
+        mPrefWriter.putString(mPrefKey, newValue);
+        if (isCustom) {
+            mPrefWriter.putString(mPrefCustomField, newValue);
+            if (mHistorySize > 0  &&  mSource.indexOfValue(newValue) == EntrySource.NOT_FOUND) {
+                mHistory.add(newValue);
+                mPrefWriter.putString(mPrefHistoryField, mHistory.encode());
+            }
+        }
+        mPrefWriter.apply(mMetricsListener);
+
+        if (!TextUtils.equals(oldValue, newValue)) {
+            // Our own listeners, and then the screen-wide ones
+            mCoordinator.dispatchValueChange(mValueChangeListeners, this, oldValue, newValue, isCustom);
+        }
     }
 
-    private class ListPreferenceWithEditTextAdapter extends BaseAdapter {
+    private class ListPreferenceWithEditTextAdapter extends BaseAdapter implements SectionIndexer {
+        private static final int MAX_SECTIONS = 32;
+        private static final long JUMP_DELAY_MS = 400;   // Jump once the user stops typing
         private LayoutInflater mInflater;
-        private boolean mCustomFiledGotFocus = false;
-        private boolean mShouldIgnoreTextChangeCallbacks = false;
-        private boolean mKeyboardAndFocusAlreadyEnabled = false;
         private Button mOkButton = null;
+        private ListView mListView = null;
+        private EntryPrefixIndex mPrefixIndex = null; // Only if filtering is enabled
+        private NumericEntrySource mSortedSource = null; // Only in sorted mode: the normal rows are in its sorted order
+        private String[] mSections = null;            // Built on first use
+        private int mRowsPerSection;
+        private ValidationPipeline mValidation = null; // Only if there's a custom-value validator
+        private EditText mCustomEditText = null;      // The custom field currently on screen
+        private CharSequence mShownError = null;      // The error currently shown in mCustomEditText
 
         public ListPreferenceWithEditTextAdapter() {
             super();
             mInflater = LayoutInflater.from(mContext);
+            if (isSortedMode()) {
+                mSortedSource = (NumericEntrySource)mSource;
+            }
+            if (mPrefixValues != null) {
+                mPrefixIndex = new EntryPrefixIndex(mPrefixValues);
+            }
+            if (mCustomValueValidator != null) {
+                mValidation = new ValidationPipeline(ListPreferenceWithEditText.this, mCustomValueValidator,
+                        mValidationExecutor, mHandler, mValidationDelayMillis, new ValidationPipeline.Callback() {
+                            @Override
+                            public void onValidated() {
+                                updateOkButton();
+                            }
+                        });
+            }
+        }
+
+        /** @return true if value passed the custom-value validator (or there's none) */
+        public boolean isValidated(String value) {
+            return mValidation == null  ||  mValidation.isValid(value);
         }
 
         @Override
         public View getView(final int position, View convertView, ViewGroup parent) {
-            if (position < mEntries.length-1) {
-                // If it's not the last row in the dialog it's a "normal" row
+            if (mMetricsListener == null) {
+                return getRow(position, convertView, parent);
+            }
+            long startNanos = System.nanoTime();
+            View row = getRow(position, convertView, parent);
+            mMetricsListener.onRowBound(getItemViewType(position), System.nanoTime() - startNanos, convertView != null);
+            return row;
+        }
+
+        private View getRow(int position, View convertView, ViewGroup parent) {
+            int normalRowCount = getNormalRowCount();
+            if (position < normalRowCount) {
+                // If it's one of the first rows in the dialog it's a "normal" row
                 return getNormalRow(position, convertView, parent);
             }
+            if (position < normalRowCount + mHistory.size()) {
+                // Next come the recently used custom values
+                return getHistoryRow(position - normalRowCount, convertView, parent);
+            }
             // Otherwise, if it is the last row in the dialog, it's the custom row
             return getCustomRow(position, convertView, parent);
         }
 
+        private View inflateRow(int layoutId, int rowType, ViewGroup parent) {
+            if (mRowViewPool != null) {
+                View row = mRowViewPool.acquire(rowType);
+                if (row != null) {
+                    return row;
+                }
+            }
+            if (mMetricsListener == null) {
+                return mInflater.inflate(layoutId, parent, false);
+            }
+            long startNanos = System.nanoTime();
+            View row = mInflater.inflate(layoutId, parent, false);
+            mMetricsListener.onRowInflated(rowType, System.nanoTime() - startNanos);
+            return row;
+        }
+
         /**
          * Return a View containing one "normal" row of the ListPreference (i.e. a row
          * with some text and a radio button)
          */
-        private View getNormalRow(final int position, View convertView, ViewGroup parent) {
+        private View getNormalRow(int position, View convertView, ViewGroup parent) {
+            int sourceIndex = getSourceIndex(position);
+            RegularRowHolder holder = bindRegularRow(convertView, parent, false, sourceIndex);
+
+            // If the custom field got the focus, we're not the active row even if our value matches the current preference value.
+            holder.getRadioButton().setChecked(mSelection.isNormalRowChecked(sourceIndex));
+
+            // Skip setText() if the row already shows this very text (e.g. when the
+            // same row is re-bound), as it re-measures the TextView.
+            CharSequence entry = mSource.getEntry(sourceIndex);
+            if (holder.getText() != entry) {
+                holder.getTextView().setText(entry);
+                holder.setText(entry);
+            }
+            return holder.getRow();
+        }
+
+        /**
+         * Return a View containing a row of a recently used custom value. It looks
+         * like a "normal" row, with the value as its text.
+         */
+        private View getHistoryRow(int historyIndex, View convertView, ViewGroup parent) {
+            RegularRowHolder holder = bindRegularRow(convertView, parent, true, historyIndex);
+            holder.getRadioButton().setChecked(mSelection.isHistoryRowChecked(historyIndex));
+            String value = mHistory.get(historyIndex);
+            if (holder.getText() != value) {
+                holder.getTextView().setText(value);
+                holder.setText(value);
+            }
+            return holder.getRow();
+        }
+
+        /**
+         * Get (inflating if needed) a row with the "normal" layout, and set it
+         * to represent the normal row at sourceIndex, or the history row at
+         * historyIndex (if isHistoryRow).
+         */
+        private RegularRowHolder bindRegularRow(View convertView, ViewGroup parent, boolean isHistoryRow, int index) {
             if (convertView == null) {
-                convertView = mInflater.inflate(R.layout.list_preference_row_normal, parent, false);
+                convertView = inflateRow(R.layout.list_preference_row_normal, DialogMetricsListener.ROW_TYPE_NORMAL, parent);
             }
 
-            TextView textView;
-            RadioButton radioButton;
             RegularRowHolder holder = (RegularRowHolder)convertView.getTag();
             if (holder == null) {
-                textView    = (TextView)convertView.findViewById(R.id.custom_list_view_row_text_view);
-                radioButton = (RadioButton)convertView.findViewById(R.id.custom_list_view_row_radio_button);
-                convertView.setTag(new RegularRowHolder(textView, radioButton));
+                TextView textView       = (TextView)convertView.findViewById(R.id.custom_list_view_row_text_view);
+                RadioButton radioButton = (RadioButton)convertView.findViewById(R.id.custom_list_view_row_radio_button);
+                holder = new RegularRowHolder(convertView, textView, radioButton);
+                convertView.setTag(holder);
+
+                // The listeners and the clickable flags don't depend on the position,
+                // so they're set once per row view, not on every bind.
+                radioButton.setClickable(false); // This makes click events on the radio-button propagate to the row, and be handled by its click-listener below.
+                convertView.setClickable(true);
+                convertView.setOnClickListener(mNormalRowClickListener);
             }
-            else {
-                textView    = holder.getTextView();
-                radioButton = holder.getRadioButton();
+            holder.setIndex(isHistoryRow, index);
+            return holder;
+        }
+
+        // One listener for all the normal rows. The clicked row is resolved from the row's holder.
+        private final View.OnClickListener mNormalRowClickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                RegularRowHolder holder = (RegularRowHolder)v.getTag();
+                if (holder.isHistoryRow()) {
+                    persistSelection(mSelection.onHistoryRowClicked(holder.getIndex()), true);
+                }
+                else {
+                    persistSelection(mSelection.onNormalRowClicked(holder.getIndex()), false);
+                }
+                getDialog().dismiss();
             }
-            
-            radioButton.setClickable(false); // This makes click events on the radio-button propagate to the row, and be handled by its click-listener below.
-            boolean thisIsTheCurrentlySetRow =
-                    mPrefs.getString(mPrefKey, "xx").equals(mEntryValues[position])  &&
-                    ! mCustomFiledGotFocus;    // If the custom field got the focus, we're not the active row even if our value matches the current preference value.
-            radioButton.setChecked(thisIsTheCurrentlySetRow);
-            
-            textView.setText(mEntries[position]);
-            
-            convertView.setClickable(true);
-            convertView.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    mPrefEditor.putString(mPrefKey, mEntryValues[position].toString());
-                    mPrefEditor.commit();
-                    getDialog().dismiss();
+        };
+
+        // Listener of the custom row
+        private final View.OnClickListener mCustomRowClickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v) { // on clicking the custom-field's radio button
+                SpecialRowHolder rowHolder = (SpecialRowHolder)v.getTag();
+                rowHolder.getEditText().requestFocus();
+            }
+        };
+        
+        private final View.OnFocusChangeListener mCustomFieldFocusListener = new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View v, boolean hasFocus) {
+                if (hasFocus) {
+                    if (mSelection.onCustomFieldFocused()) {
+                        // The previously selected row gets un-selected, and the
+                        // custom row gets selected.
+                        updateRadioButtonsOfVisibleRows();
+
+                        // Show the soft-keyboard
+                        setImeVisibility(true, v);
+
+                        updateOkButton();
+                    }
                 }
-            });
-            return convertView;
+                else {
+                    // In some versions of Android, for some (unknown to me) reason,
+                    // the EditText looses focus immediately after gaining it (the
+                    // focus goes to the surrounding ListView). Here we grab the
+                    // focus back to the EditText view.
+                    if (mSelection.isEditingCustomValue()) {
+                        mFocusReclaimRunnable.setView(v);
+                        mHandler.removeCallbacks(mFocusReclaimRunnable); // At most one pending reclaim
+                        mHandler.post(mFocusReclaimRunnable);
+                    }
+                }
+            }
+        };
+
+        private final TextWatcher mCustomFieldTextWatcher = new TextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (mSelection.onCustomTextChanged(s.toString())) {
+                    if (mSortedSource != null) {
+                        mHandler.removeCallbacks(mJumpToNearestRunnable);
+                        mHandler.postDelayed(mJumpToNearestRunnable, JUMP_DELAY_MS);
+                    }
+                    else if (mFilterEntries) {
+                        filterNormalRows(mSelection.getCustomValue());
+                    }
+                    updateOkButton();
+                }
+            }
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after){}
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count){}
+        };
+
+        /**
+         * Enable the OK button if the custom field got the focus and holds an
+         * acceptable value. With a validator, an acceptable value must also pass
+         * it: a new value is handed to the validation pipeline, and the button
+         * stays disabled until its result arrives (this is called again then).
+         */
+        private void updateOkButton() {
+            String value = mSelection.getCustomValue();
+            boolean enabled = mSelection.isEditingCustomValue()  &&  isAcceptableCustomValue(value);
+            CharSequence error = null;
+            if (mValidation != null) {
+                if (enabled) {
+                    mValidation.onValueChanged(value); // Does nothing if value is already checked
+                    enabled = mValidation.isValid(value);
+                    error   = mValidation.getError(value);
+                }
+                else {
+                    mValidation.cancel();
+                }
+                showError(error);
+            }
+            if (mOkButton != null) {
+                mOkButton.setEnabled(enabled);
+            }
         }
-        
+
+        /** Show error (null to clear it) as the custom field's inline hint */
+        private void showError(CharSequence error) {
+            if (mCustomEditText != null  &&  !TextUtils.equals(error, mShownError)) {
+                mCustomEditText.setError(error);
+                mShownError = error;
+            }
+        }
+
         /**
          * Return a View containing the "custom" row of the ListPreference (i.e. a row
          * with an EditText field and a radio button)
@@ -155,25 +806,12 @@ public class ListPreferenceWithEditText extends ListPreference {
         private View getCustomRow(final int position, View convertView, ViewGroup parent) {
             // When we create and manipulate the EditText field in this method,
             // Android calls the field's TextWatcher's methods (e.g. afterTextChanged()).
-            // We don't want these calls, so we protect ourselves with this
-            // flag (which we set here and clear at this method's end).
-            mShouldIgnoreTextChangeCallbacks = true;
+            // We don't want these calls, so we tell the state machine to ignore
+            // them until this method's end.
+            mSelection.beginBind();
 
-            // Without this, Android won't show the soft-KB when the EditText field gets focus.
-            enableSoftKeyboardAndFocus(parent);
-    
             if (convertView == null) {
-                convertView = mInflater.inflate(R.layout.list_preference_row_with_edit_text, parent, false);
-    
-                // Disable the "OK" button (it'll be enabled when the user input some text).
-                // Save the button in a member variable so we can later change it's state.
-                // This code location is somewhat awkward, but we needed a place where we
-                // have access to the dialog.
-                AlertDialog ad = (AlertDialog)getDialog();
-                if (mOkButton == null  &&  ad != null) {
-                    mOkButton = ad.getButton(DialogInterface.BUTTON_POSITIVE);
-                    mOkButton.setEnabled(false);
-                }
+                convertView = inflateRow(R.layout.list_preference_row_with_edit_text, DialogMetricsListener.ROW_TYPE_CUSTOM, parent);
             }
     
             EditText editText;
@@ -184,128 +822,102 @@ public class ListPreferenceWithEditText extends ListPreference {
                 radioButton = (RadioButton)convertView.findViewById(R.id.custom_list_view_row_radio_button);
                 convertView.setTag(new SpecialRowHolder(editText, radioButton));
 
-                editText.setOnFocusChangeListener(new View.OnFocusChangeListener() {
-                    @Override
-                    public void onFocusChange(final View v, boolean hasFocus) {
-                        if (hasFocus) {
-                            if (!mCustomFiledGotFocus) {
-                                // This tells the containing ListPreference to re-draw the dialog
-                                // so the previously selected button gets un-selected
-                                notifyDataSetChanged();
-
-                                if (mCustomValue == null) {
-                                    mCustomValue = ((EditText)v).getText().toString();
-                                }
-    
-                                // Show the soft-keyboard
-                                setImeVisibility(true, v);
-            
-                                mOkButton.setEnabled(true);
-                            }
-                            mCustomFiledGotFocus = true;
-                        }
-                        else {
-                            // In some versions of Android, for some (unknown to me) reason,
-                            // the EditText looses focus immediately after gaining it (the
-                            // focus goes to the surrounding ListView). Here we grab the
-                            // focus back to the EditText view.
-                            if (mCustomFiledGotFocus) {
-                                mHandler.post(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        v.requestFocus();
-                                    }
-                                });
-                            }
-                        }
-                    }
-                });
-
-                editText.addTextChangedListener(new TextWatcher() {
-                    @Override
-                    public void afterTextChanged(Editable s) {
-                        if (!mShouldIgnoreTextChangeCallbacks) {
-                            mCustomValue = s.toString();
-                        }
-                    }
-                    @Override public void beforeTextChanged(CharSequence s, int start, int count, int after){}
-                    @Override public void onTextChanged(CharSequence s, int start, int before, int count){}
-                });
+                editText.setOnFocusChangeListener(mCustomFieldFocusListener);
+                editText.addTextChangedListener(mCustomFieldTextWatcher);
 
+                // Make click events on the radio-button propagate to the row, and
+                // be handled by its click-listener.
+                radioButton.setClickable(false);
                 convertView.setClickable(true);
-                convertView.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick(View v) { // on clicking the custom-field's radio button
-                        SpecialRowHolder rowHolder = (SpecialRowHolder)v.getTag();
-                        rowHolder.getEditText().requestFocus();
-                    }
-                });
+                convertView.setOnClickListener(mCustomRowClickListener);
             }
             else {
                 // convertView != null. Reuse the EditText and RadioButton.
                 editText = holder.getEditText();
                 radioButton = holder.getRadioButton();
             }
-    
-            // Make click events on the radio-button propagate to the row, and
-            // be handled by its click-listener.
-            radioButton.setClickable(false);
 
             // Determine if this is the currently active row, and if so, turn on
             // the radio button. This is the currently active row if the
-            // preference value doesn't match any of the "normal" rows.
-            String valueFromPrefs = mPrefs.getString(mPrefKey, "xx");
-            boolean currentSelectionIsOneOfTheNormalLines = false;
-            for (int i=0 ; i<mEntryValues.length-1 ; i++) {  // Enumerate over the "normal" rows
-                if (mEntryValues[i].toString().equals(valueFromPrefs)) {
-                    currentSelectionIsOneOfTheNormalLines = true;
-                    break;
-                }
-            }
-            if (mCustomFiledGotFocus) {
-                currentSelectionIsOneOfTheNormalLines = false;
-            }
-            radioButton.setChecked(!currentSelectionIsOneOfTheNormalLines);
+            // preference value doesn't match any of the "normal" rows, or if
+            // the custom field got the focus.
+            radioButton.setChecked(mSelection.isCustomRowChecked());
 
-            if (mCustomValue == null) {
-                mCustomValue = mPrefs.getString(mPrefCustomField, mEntryValues[mEntryValues.length-1].toString());
+            String customValue = mSelection.getCustomValue();
+            // Don't touch the text if it didn't change. Besides being wasteful, this
+            // would reset the cursor while the user is typing (e.g. when filtering
+            // re-binds the rows on every keystroke).
+            if (!TextUtils.equals(editText.getText(), customValue)) {
+                editText.setText("");
+                editText.append(customValue); // Insert the text and place the cursor at its end.
+            }
+            if (mValidation != null  &&  editText != mCustomEditText) {
+                mCustomEditText = editText;
+                mShownError = null;
+                editText.setError(null);
+                showError(mValidation.getError(customValue));
             }
-            editText.setText("");
-            editText.append(mCustomValue); // Insert the text and place the cursor at its end.
             
-            mShouldIgnoreTextChangeCallbacks = false;
+            mSelection.endBind();
             return convertView;
         }
         
         /**
-         * Traverse the view's view-hierarchy upwards.
-         * @return v itself if its a ListView, or v's closest ancestor which is
-         * a ListView. null if no ListView ancestor found.
-         */ 
-        private ListView getListViewAncestor(View v) {
-            while (v != null) {
-                if (v instanceof android.widget.ListView) {
-                    break;
+         * Set the radio buttons of the rows that are currently on screen according
+         * to the selection state. Only buttons whose state actually changed are
+         * touched, and no row is re-bound (unlike notifyDataSetChanged(), which
+         * re-binds every visible row, including the custom row's EditText).
+         * Rows that are not on screen get the right state when they're bound.
+         */
+        private void updateRadioButtonsOfVisibleRows() {
+            if (mListView == null) {
+                notifyDataSetChanged();
+                return;
+            }
+            int childCount = mListView.getChildCount();
+            for (int i=0 ; i<childCount ; i++) {
+                Object tag = mListView.getChildAt(i).getTag();
+                RadioButton radioButton;
+                boolean checked;
+                if (tag instanceof RegularRowHolder) {
+                    RegularRowHolder holder = (RegularRowHolder)tag;
+                    radioButton = holder.getRadioButton();
+                    checked = holder.isHistoryRow() ? mSelection.isHistoryRowChecked(holder.getIndex())
+                                                    : mSelection.isNormalRowChecked(holder.getIndex());
+                }
+                else if (tag instanceof SpecialRowHolder) {
+                    radioButton = ((SpecialRowHolder)tag).getRadioButton();
+                    checked = mSelection.isCustomRowChecked();
                 }
-                ViewParent vp = v.getParent();
-                if (! (vp instanceof View)) {
-                    v = null;
-                    break;
+                else {
+                    continue;
+                }
+                if (radioButton.isChecked() != checked) {
+                    radioButton.setChecked(checked);
                 }
-                v = (View)vp;
             }
-            return (ListView)v;
         }
 
         private class RegularRowHolder {
+            private View mRow;
             private TextView mTextView;
             private RadioButton mRadioButton;
-            public RegularRowHolder(TextView tv, RadioButton rb) {
+            private boolean mIsHistoryRow;   // true if the row shows a recently used custom value
+            private int mIndex;              // The source index (or history index) currently bound to the row
+            private CharSequence mText;      // The text currently set in mTextView
+            public RegularRowHolder(View row, TextView tv, RadioButton rb) {
+                mRow = row;
                 mTextView = tv;
                 mRadioButton = rb;
             }
+            public View getRow() { return mRow; }
             public TextView getTextView() { return mTextView; }
             public RadioButton getRadioButton() { return mRadioButton; }
+            public boolean isHistoryRow() { return mIsHistoryRow; }
+            public int getIndex() { return mIndex; }
+            public void setIndex(boolean isHistoryRow, int index) { mIsHistoryRow = isHistoryRow; mIndex = index; }
+            public CharSequence getText() { return mText; }
+            public void setText(CharSequence text) { mText = text; }
         }
 
         private class SpecialRowHolder {
@@ -319,13 +931,110 @@ public class ListPreferenceWithEditText extends ListPreference {
             public RadioButton getRadioButton() { return mRadioButton; }
         }
 
+        /** Narrow the normal rows to those whose values start with prefix */
+        private void filterNormalRows(String prefix) {
+            if (mPrefixIndex != null  &&  mPrefixIndex.setPrefix(prefix)) {
+                notifyDataSetChanged();
+            }
+        }
+
+        /** @return Number of normal rows currently shown (i.e. that passed the filter) */
+        private int getNormalRowCount() {
+            return (mPrefixIndex == null ? mSource.getCount() : mPrefixIndex.getCount());
+        }
+
+        /** @return The index in mSource of the normal row at position */
+        private int getSourceIndex(int position) {
+            if (mSortedSource != null) {
+                return mSortedSource.getSourceIndexOfSorted(position);
+            }
+            return (mPrefixIndex == null ? position : mPrefixIndex.getSourceIndex(position));
+        }
+
+        /**
+         * Scrolls the list to the normal row whose value is nearest to the
+         * number in the custom field (sorted mode only).
+         */
+        private final Runnable mJumpToNearestRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (mListView == null  ||  mSortedSource == null) {
+                    return;
+                }
+                long value;
+                try {
+                    value = NumericEntrySource.parse(mSelection.getCustomValue());
+                }
+                catch (NumberFormatException e) {
+                    return;
+                }
+                int position = mSortedSource.nearest(value);
+                if (position >= 0) {
+                    mListView.setSelection(position);
+                }
+            }
+        };
+
+        // Sections (for fast scrolling) are used only in sorted mode. Each
+        // section is an equal share of the sorted normal rows, labeled with its
+        // first value, so mapping between positions and sections is arithmetic.
+        @Override
+        public Object[] getSections() {
+            if (mSortedSource == null) {
+                return new String[0];
+            }
+            if (mSections == null) {
+                int count = mSortedSource.getCount();
+                int sectionCount = Math.min(count, MAX_SECTIONS);
+                mRowsPerSection = (sectionCount == 0 ? 1 : (count + sectionCount - 1) / sectionCount);
+                sectionCount = (count + mRowsPerSection - 1) / mRowsPerSection;
+                mSections = new String[sectionCount];
+                for (int i=0 ; i<sectionCount ; i++) {
+                    mSections[i] = Long.toString(mSortedSource.getSortedValue(i * mRowsPerSection));
+                }
+            }
+            return mSections;
+        }
+
+        @Override
+        public int getPositionForSection(int section) {
+            int sectionCount = getSections().length;
+            if (sectionCount == 0) {
+                return 0;
+            }
+            section = Math.max(0, Math.min(section, sectionCount - 1));
+            return section * mRowsPerSection;
+        }
+
+        @Override
+        public int getSectionForPosition(int position) {
+            int sectionCount = getSections().length;
+            if (sectionCount == 0) {
+                return 0;
+            }
+            // The history rows and the custom row belong to the last section
+            return Math.max(0, Math.min(position / mRowsPerSection, sectionCount - 1));
+        }
+
         @Override
         public int getCount() {
-            return mEntries.length;
+            return getNormalRowCount() + mHistory.size() + 1; // The normal rows, the history rows, and the custom row
         }
 
         @Override public Object getItem(int position) { return null; } // Shouldn't be called
-        @Override public long getItemId(int position) { return position; }
+
+        @Override
+        public long getItemId(int position) {
+            // Ids must stay stable while filtering moves the rows around
+            int normalRowCount = getNormalRowCount();
+            if (position < normalRowCount) {
+                return getSourceIndex(position);
+            }
+            if (position < normalRowCount + mHistory.size()) {
+                return mSource.getCount() + 1 + (position - normalRowCount);
+            }
+            return mSource.getCount();
+        }
         
         @Override
         public boolean hasStableIds() {
@@ -339,40 +1048,105 @@ public class ListPreferenceWithEditText extends ListPreference {
         
         @Override
         public int getItemViewType(int position) {
-            // All the rows except for the last one are "normal" (type 0).
+            // All the rows except for the last one are "normal" (type 0). This
+            // includes the history rows, which use the same layout.
             // The last row is a "custom" row (type 1).
-            return (position < mEntries.length-1 ? 0 : 1);
-        }
-
-
-        // Normally, Android doesn't let an EditText that resides inside
-        // a Dialog (such as ours) gain focus and show the soft KB.
-        // This method fixes this.
-        private void enableSoftKeyboardAndFocus(View view) {
-            if (!mKeyboardAndFocusAlreadyEnabled) {
-                Dialog dialog = getDialog();
-                if (dialog != null) {
-                    Window theWindow = dialog.getWindow();
-                    WindowManager.LayoutParams lp = theWindow.getAttributes();
-                    if ((lp.softInputMode & WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE) == 0) {
-                        lp.gravity       = Gravity.TOP | Gravity.FILL_HORIZONTAL;
-                        lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE;
-                        theWindow.setAttributes(lp);
-                    }
-    
-                    // http://stackoverflow.com/questions/9102074/android-edittext-in-dialog-doesnt-pull-up-soft-keyboard/9118027#9118027
-                    // Ask Android to show the soft keyboard when the EditText field gets the focus.
-                    theWindow.clearFlags(WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
-                                         WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM);
-                    theWindow.setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_VISIBLE);
-
-                    // Find our ListView and tell it to allow its children to get focus.
-                    // Otherwise it doesn't let our EditText field get focus.
-                    ListView parent = getListViewAncestor(view);
-                    parent.setItemsCanFocus(true);
-                    parent.setDescendantFocusability(ViewGroup.FOCUS_AFTER_DESCENDANTS);
-
-                    mKeyboardAndFocusAlreadyEnabled = true;
+            return (position < getNormalRowCount() + mHistory.size() ? 0 : 1);
+        }
+
+
+        /**
+         * Called once the dialog is shown. Normally, Android doesn't let an
+         * EditText that resides inside a Dialog (such as ours) gain focus and
+         * show the soft KB. This method fixes this.
+         */
+        public void onDialogShown(AlertDialog dialog) {
+            Window theWindow = dialog.getWindow();
+            WindowManager.LayoutParams lp = theWindow.getAttributes();
+            if ((lp.softInputMode & WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE) == 0) {
+                lp.gravity       = Gravity.TOP | Gravity.FILL_HORIZONTAL;
+                lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE;
+                theWindow.setAttributes(lp);
+            }
+
+            // http://stackoverflow.com/questions/9102074/android-edittext-in-dialog-doesnt-pull-up-soft-keyboard/9118027#9118027
+            // Ask Android to show the soft keyboard when the EditText field gets the focus.
+            theWindow.clearFlags(WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                                 WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM);
+            theWindow.setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_VISIBLE);
+
+            // Tell our ListView to allow its children to get focus.
+            // Otherwise it doesn't let our EditText field get focus.
+            mListView = dialog.getListView();
+            if (mListView != null) {
+                mListView.setItemsCanFocus(true);
+                mListView.setDescendantFocusability(ViewGroup.FOCUS_AFTER_DESCENDANTS);
+                if (mSortedSource != null) {
+                    mListView.setFastScrollEnabled(true);
+                }
+            }
+
+            // Disable the "OK" button (it'll be enabled when the custom field gets
+            // the focus). Save the button in a member variable so we can later
+            // change it's state.
+            mOkButton = dialog.getButton(DialogInterface.BUTTON_POSITIVE);
+            if (mOkButton != null) {
+                mOkButton.setEnabled(false);
+            }
+        }
+
+        /**
+         * Release everything that ties the (closed) dialog to this adapter and
+         * to the preference: cancel the pending keyboard and focus callbacks
+         * (they hold the custom field), detach the adapter from the ListView,
+         * and strip the rows of this adapter's holders and listeners. The
+         * preference's dialog builder keeps the last adapter, so it also drops
+         * its per-dialog data (the sorted entries, the prefix index).
+         * @param pool If not null, the rows are moved into it, so the next
+         *        dialog doesn't have to inflate them.
+         */
+        public void tearDown(RowViewPool pool) {
+            mHandler.removeCallbacks(mShowImeRunnable);
+            mHandler.removeCallbacks(mFocusReclaimRunnable);
+            mHandler.removeCallbacks(mJumpToNearestRunnable);
+            if (mValidation != null) {
+                mValidation.cancel();
+                mValidation = null;
+            }
+            mPrefixIndex  = null;
+            mSortedSource = null;
+            mSections     = null;
+            mCustomEditText = null;
+            mShowImeRunnable.start(null, 0);
+            mFocusReclaimRunnable.setView(null);
+            mOkButton = null;
+            if (mListView == null) {
+                return;
+            }
+            ArrayList<View> rows = new ArrayList<View>();
+            mListView.reclaimViews(rows); // Detaches the visible rows, and empties the ListView's recycler
+            mListView.setAdapter(null);
+            mListView = null;
+            for (int i=0 ; i<rows.size() ; i++) {
+                View row = rows.get(i);
+                Object tag = row.getTag();
+                int rowType;
+                if (tag instanceof RegularRowHolder) {
+                    rowType = DialogMetricsListener.ROW_TYPE_NORMAL;
+                }
+                else if (tag instanceof SpecialRowHolder) {
+                    rowType = DialogMetricsListener.ROW_TYPE_CUSTOM;
+                    EditText editText = ((SpecialRowHolder)tag).getEditText();
+                    editText.setOnFocusChangeListener(null);
+                    editText.removeTextChangedListener(mCustomFieldTextWatcher);
+                }
+                else {
+                    continue;
+                }
+                row.setTag(null);
+                row.setOnClickListener(null);
+                if (pool != null) {
+                    pool.release(row, rowType);
                 }
             }
         }
@@ -383,11 +1157,11 @@ public class ListPreferenceWithEditText extends ListPreference {
         private void setImeVisibility(boolean kbVisible, View view) {
             mHandler.removeCallbacks(mShowImeRunnable);
             if (kbVisible) {
-                mShowImeRunnable.setView(view);
-                // Hack alert: On some versions of Android, for some (unknown
-                // to me) reason if the post is not delayed, the soft keyboard
-                // is not displayed.
-                mHandler.postDelayed(mShowImeRunnable, 200);
+                mShowImeRunnable.start(view, System.nanoTime());
+                // Try right away (on the next message-loop iteration, after the
+                // focus change completes). If the IME isn't ready for the view
+                // yet, ShowImeRunnable retries a bounded number of times.
+                mHandler.post(mShowImeRunnable);
             }
             else {
                 // Hide the soft keyboard
@@ -397,16 +1171,73 @@ public class ListPreferenceWithEditText extends ListPreference {
                 }
             }
         }
+        /**
+         * Shows the soft keyboard as soon as the IME is ready for the view.
+         * Until the window gets the focus and the IME connects to the view,
+         * showSoftInput() fails. Instead of waiting a fixed time, we try right
+         * away, and on failure retry every frame, for a bounded number of attempts.
+         */
         private class ShowImeRunnable implements Runnable {
+            private static final int MAX_ATTEMPTS = 20;      // ~20 frames
+            private static final long RETRY_DELAY_MS = 16;
             private View mView;
-            public void setView(View view) {
+            private long mRequestTimeNanos;  // When the keyboard was requested (i.e. when the custom field got the focus)
+            private int mAttempts;
+            public void start(View view, long requestTimeNanos) {
                 mView = view;
+                mRequestTimeNanos = requestTimeNanos;
+                mAttempts = 0;
             }
             @Override
             public void run() {
                 InputMethodManager imm = (InputMethodManager)getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
-                if (imm != null) {
-                    imm.showSoftInput(mView, InputMethodManager.SHOW_IMPLICIT);
+                if (imm == null  ||  mView == null) {
+                    return;
+                }
+                mAttempts++;
+                if (mView.hasWindowFocus()  &&  imm.showSoftInput(mView, InputMethodManager.SHOW_IMPLICIT)) {
+                    mLastKeyboardLatencyNanos = System.nanoTime() - mRequestTimeNanos;
+                    if (mMetricsListener != null) {
+                        mMetricsListener.onKeyboardShown(mLastKeyboardLatencyNanos);
+                    }
+                }
+                else if (mAttempts < MAX_ATTEMPTS  &&  mView.isFocused()) {
+                    mHandler.postDelayed(this, RETRY_DELAY_MS);
+                }
+            }
+        }
+
+        /**
+         * Gives the focus back to the custom field, if it was taken by the
+         * ListView itself (see the custom field's focus listener). The number of
+         * reclaims is bounded, so the EditText and the ListView can't keep
+         * passing the focus back and forth.
+         */
+        private final FocusReclaimRunnable mFocusReclaimRunnable = new FocusReclaimRunnable();
+        private class FocusReclaimRunnable implements Runnable {
+            private static final int MAX_RECLAIMS = 2;       // Per dialog
+            private View mView;
+            private int mReclaims = 0;
+            public void setView(View view) {
+                mView = view;
+            }
+            @Override
+            public void run() {
+                if (mView == null  ||  mView.hasFocus()  ||  mReclaims >= MAX_RECLAIMS) {
+                    return;
+                }
+                // The field also loses the focus when the dialog is closed, and
+                // this may run before onDialogClosed() cancels it. A detached
+                // field that gets the focus back keeps its cursor blinking, and
+                // the blink's messages keep the whole closed dialog alive.
+                if (mView.getWindowToken() == null) {
+                    return;
+                }
+                // Reclaim only if the focus went to the ListView. If the user
+                // moved the focus elsewhere, leave it there.
+                if (mListView == null  ||  mListView.isFocused()) {
+                    mReclaims++;
+                    mView.requestFocus();
                 }
             }
         }
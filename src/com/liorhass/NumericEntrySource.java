@@ -0,0 +1,161 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * Wraps an EntrySource whose values are all integer numbers. The values are
+ * parsed once, when this object is created, into primitive arrays, so looking
+ * up a value parses it once and then compares numbers (with a binary search)
+ * instead of strings. As a bonus, lookups ignore formatting differences such as
+ * leading zeros.
+ */
+class NumericEntrySource implements EntrySource {
+    private final EntrySource mSource;
+    private final long[] mValues;          // The parsed values, in source order
+    private final long[] mSortedValues;
+    private final int[] mSortedToSource;   // Source index of each item of mSortedValues
+
+    /**
+     * Reads every value of source once. A PagedEntrySource is read without
+     * disturbing its window of pages.
+     * @throws IllegalStateException if a value of source is not an integer number
+     */
+    public NumericEntrySource(EntrySource source) {
+        mSource = source;
+        int count = source.getCount();
+        String[] values = new String[count];
+        PagedEntrySource.copyValues(source, values);
+        mValues = new long[count];
+        for (int i=0 ; i<count ; i++) {
+            String value = values[i];
+            try {
+                mValues[i] = Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalStateException("Entry value \"" + value + "\" is not a number");
+            }
+        }
+
+        // Sort the indices by value. The sort is stable, so the first of equal
+        // values is the one with the smallest source index.
+        mSortedToSource = new int[count];
+        for (int i=0 ; i<count ; i++) {
+            mSortedToSource[i] = i;
+        }
+        new IndexMergeSort() {
+            @Override
+            protected int compare(int a, int b) {
+                return (mValues[a] < mValues[b] ? -1 : (mValues[a] == mValues[b] ? 0 : 1));
+            }
+        }.sort(mSortedToSource);
+        mSortedValues = new long[count];
+        for (int i=0 ; i<count ; i++) {
+            mSortedValues[i] = mValues[mSortedToSource[i]];
+        }
+    }
+
+    /**
+     * Parse a value the way entry values are parsed.
+     * @throws NumberFormatException if value is not an integer number
+     */
+    public static long parse(String value) {
+        if (value == null) {
+            throw new NumberFormatException("null");
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    /** @return The wrapped source */
+    EntrySource getSource() {
+        return mSource;
+    }
+
+    @Override
+    public int getCount() {
+        return mValues.length;
+    }
+
+    @Override
+    public CharSequence getEntry(int index) {
+        return mSource.getEntry(index);
+    }
+
+    @Override
+    public CharSequence getEntryValue(int index) {
+        return mSource.getEntryValue(index);
+    }
+
+    /** @return The parsed value of the entry at index */
+    public long getLongValue(int index) {
+        return mValues[index];
+    }
+
+    @Override
+    public int indexOfValue(String value) {
+        long number;
+        try {
+            number = parse(value);
+        }
+        catch (NumberFormatException e) {
+            return NOT_FOUND;
+        }
+        return indexOfValue(number);
+    }
+
+    /** @return The index of the first entry whose value is value, or NOT_FOUND */
+    public int indexOfValue(long value) {
+        int sorted = lowerBound(value);
+        if (sorted < mSortedValues.length  &&  mSortedValues[sorted] == value) {
+            return mSortedToSource[sorted];
+        }
+        return NOT_FOUND;
+    }
+
+    /** @return The source index of the entry at position sorted of the sorted values */
+    int getSourceIndexOfSorted(int sorted) {
+        return mSortedToSource[sorted];
+    }
+
+    /** @return The value at position sorted of the sorted values */
+    long getSortedValue(int sorted) {
+        return mSortedValues[sorted];
+    }
+
+    /**
+     * @return The position in the sorted values of the value that is nearest
+     * to value (the smaller one, on a tie). -1 if there are no values.
+     */
+    int nearest(long value) {
+        int sorted = lowerBound(value);
+        if (sorted == 0) {
+            return (mSortedValues.length == 0 ? -1 : 0);
+        }
+        if (sorted < mSortedValues.length) {
+            // Both distances are non-negative, but may not fit in a (signed)
+            // long, so they're compared as unsigned numbers.
+            long below = value - mSortedValues[sorted-1];
+            long above = mSortedValues[sorted] - value;
+            if (below + Long.MIN_VALUE > above + Long.MIN_VALUE) {
+                return sorted;
+            }
+        }
+        return lowerBound(mSortedValues[sorted-1]); // The first of the equal values below value
+    }
+
+    /** @return The position in the sorted values of the first value that is >= value */
+    int lowerBound(long value) {
+        int start = 0;
+        int end   = mSortedValues.length;
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (mSortedValues[mid] < value) {
+                start = mid + 1;
+            }
+            else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+}
@@ -0,0 +1,156 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An EntrySource that loads its entries lazily, one page at a time, and keeps
+ * only a small window of recently used pages in memory. Useful for large or
+ * computed value sets that shouldn't be materialized up front.
+ * Subclasses implement getCount() and loadPage(). indexOfValue() loads every
+ * page that is not in the window, so subclasses that can find a value without
+ * loading the pages (e.g. because the values are computed) should override it.
+ */
+public abstract class PagedEntrySource implements EntrySource {
+    private final int mPageSize;
+    private final LinkedHashMap<Integer, Page> mPages;
+
+    private static class Page {
+        final CharSequence[] mEntries;
+        final CharSequence[] mEntryValues;
+        Page(int size) {
+            mEntries     = new CharSequence[size];
+            mEntryValues = new CharSequence[size];
+        }
+    }
+
+    /**
+     * @param pageSize Number of entries loaded by each loadPage() call
+     * @param maxPagesInMemory Size of the window. The least recently used page is
+     *        dropped when a new page is loaded and the window is full.
+     */
+    public PagedEntrySource(int pageSize, final int maxPagesInMemory) {
+        if (pageSize < 1 || maxPagesInMemory < 1) {
+            throw new IllegalArgumentException("pageSize and maxPagesInMemory must be positive");
+        }
+        mPageSize = pageSize;
+        mPages = new LinkedHashMap<Integer, Page>(maxPagesInMemory + 1, 1.0f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > maxPagesInMemory;
+            }
+        };
+    }
+
+    /**
+     * Load count entries, starting with the entry at firstIndex.
+     * @param entries Fill entries[0..count-1] with the displayed texts
+     * @param entryValues Fill entryValues[0..count-1] with the values
+     */
+    protected abstract void loadPage(int firstIndex, int count, CharSequence[] entries, CharSequence[] entryValues);
+
+    @Override
+    public CharSequence getEntry(int index) {
+        return getPage(index).mEntries[index % mPageSize];
+    }
+
+    @Override
+    public CharSequence getEntryValue(int index) {
+        return getPage(index).mEntryValues[index % mPageSize];
+    }
+
+    /**
+     * A linear scan over all the pages. Like copyValues(), it doesn't replace
+     * the window's pages. Override if the values can be looked up directly.
+     */
+    @Override
+    public int indexOfValue(String value) {
+        if (value == null) {
+            return NOT_FOUND;
+        }
+        int count = getCount();
+        Page scratch = new Page(mPageSize);
+        for (int firstIndex=0 ; firstIndex<count ; firstIndex+=mPageSize) {
+            int size = Math.min(mPageSize, count - firstIndex);
+            Page page = peekPage(firstIndex, size, scratch);
+            for (int i=0 ; i<size ; i++) {
+                if (value.equals(page.mEntryValues[i].toString())) {
+                    return firstIndex + i;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Copy all the values into values (as strings), page by page. Pages that
+     * are not in the window are loaded into a scratch page, so reading all the
+     * values doesn't replace the window's pages (i.e. the pages on screen).
+     */
+    void copyValues(String[] values) {
+        int count = getCount();
+        Page scratch = new Page(mPageSize);
+        for (int firstIndex=0 ; firstIndex<count ; firstIndex+=mPageSize) {
+            int size = Math.min(mPageSize, count - firstIndex);
+            Page page = peekPage(firstIndex, size, scratch);
+            for (int i=0 ; i<size ; i++) {
+                values[firstIndex + i] = page.mEntryValues[i].toString();
+            }
+        }
+    }
+
+    /**
+     * Copy all the values of source into values (as strings). A PagedEntrySource,
+     * also one that is wrapped by a NumericEntrySource, is read with copyValues(),
+     * so its window of pages isn't disturbed.
+     */
+    static void copyValues(EntrySource source, String[] values) {
+        if (source instanceof NumericEntrySource) {
+            source = ((NumericEntrySource)source).getSource();
+        }
+        if (source instanceof PagedEntrySource) {
+            ((PagedEntrySource)source).copyValues(values);
+        }
+        else {
+            int count = source.getCount();
+            for (int i=0 ; i<count ; i++) {
+                values[i] = source.getEntryValue(i).toString();
+            }
+        }
+    }
+
+    /** Drop all the loaded pages (e.g. when the underlying data changed) */
+    public void invalidate() {
+        mPages.clear();
+    }
+
+    /**
+     * @return The page that starts at firstIndex. If it's not in the window, it's
+     *         loaded into scratch (size entries of it), and isn't added to the window.
+     */
+    private Page peekPage(int firstIndex, int size, Page scratch) {
+        Page page = mPages.get(firstIndex / mPageSize);
+        if (page == null) {
+            loadPage(firstIndex, size, scratch.mEntries, scratch.mEntryValues);
+            page = scratch;
+        }
+        return page;
+    }
+
+    private Page getPage(int index) {
+        int pageNumber = index / mPageSize;
+        Page page = mPages.get(pageNumber);
+        if (page == null) {
+            int firstIndex = pageNumber * mPageSize;
+            int size = Math.min(mPageSize, getCount() - firstIndex);
+            page = new Page(size);
+            loadPage(firstIndex, size, page.mEntries, page.mEntryValues);
+            mPages.put(pageNumber, page);
+        }
+        return page;
+    }
+}
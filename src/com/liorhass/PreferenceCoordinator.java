@@ -0,0 +1,146 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+/**
+ * Resources that are shared by all the ListPreferenceWithEditText instances
+ * that use the same SharedPreferences (typically all the instances of a
+ * settings screen): one PreferenceWriter (so writes of all the instances are
+ * batched together), one main-thread Handler, and one value-change dispatcher.
+ * Without it, each instance would have its own editor, writer and handler.
+ * All methods should be called from the UI thread.
+ */
+public class PreferenceCoordinator {
+    // One coordinator per SharedPreferences. Coordinators (like the SharedPreferences
+    // instances, which the framework caches) live for the whole process.
+    private static final HashMap<SharedPreferences, PreferenceCoordinator> sCoordinators =
+            new HashMap<SharedPreferences, PreferenceCoordinator>();
+
+    private final SharedPreferences mPrefs;
+    private final Handler mHandler;
+    private final PreferenceWriter mWriter;
+    private ArrayList<ListenerRegistration> mValueChangeListeners = null; // Listeners of all the preferences
+
+    /** A value-change listener together with the executor it should be called on */
+    static class ListenerRegistration {
+        final ListPreferenceWithEditText.OnValueChangeListener mListener;
+        final Executor mExecutor;
+        ListenerRegistration(ListPreferenceWithEditText.OnValueChangeListener listener, Executor executor) {
+            mListener = listener;
+            mExecutor = executor;
+        }
+    }
+
+    private PreferenceCoordinator(SharedPreferences prefs) {
+        mPrefs   = prefs;
+        mHandler = new Handler(Looper.getMainLooper());
+        mWriter  = new PreferenceWriter(prefs, mHandler);
+    }
+
+    /** @return The coordinator of the default SharedPreferences of context */
+    public static PreferenceCoordinator get(Context context) {
+        return get(PreferenceManager.getDefaultSharedPreferences(context));
+    }
+
+    /** @return The coordinator of prefs */
+    public static PreferenceCoordinator get(SharedPreferences prefs) {
+        PreferenceCoordinator coordinator = sCoordinators.get(prefs);
+        if (coordinator == null) {
+            coordinator = new PreferenceCoordinator(prefs);
+            sCoordinators.put(prefs, coordinator);
+        }
+        return coordinator;
+    }
+
+    public SharedPreferences getSharedPreferences() {
+        return mPrefs;
+    }
+
+    /** @return The main-thread handler shared by all the preferences */
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    /** @return The writer shared by all the preferences */
+    public PreferenceWriter getWriter() {
+        return mWriter;
+    }
+
+    /**
+     * Register a callback that is invoked when the user selects a new value in
+     * any of the preferences of this coordinator (e.g. to reconfigure once per
+     * change, whichever preference changed).
+     * @param executor The executor on which the callback is invoked. null to
+     *        invoke it directly on the UI thread.
+     */
+    public void addOnValueChangeListener(ListPreferenceWithEditText.OnValueChangeListener listener, Executor executor) {
+        mValueChangeListeners = addListener(mValueChangeListeners, listener, executor);
+    }
+
+    public void removeOnValueChangeListener(ListPreferenceWithEditText.OnValueChangeListener listener) {
+        removeListener(mValueChangeListeners, listener);
+    }
+
+    static ArrayList<ListenerRegistration> addListener(ArrayList<ListenerRegistration> listeners,
+            ListPreferenceWithEditText.OnValueChangeListener listener, Executor executor) {
+        if (listeners == null) {
+            listeners = new ArrayList<ListenerRegistration>(2);
+        }
+        listeners.add(new ListenerRegistration(listener, executor));
+        return listeners;
+    }
+
+    static void removeListener(ArrayList<ListenerRegistration> listeners, ListPreferenceWithEditText.OnValueChangeListener listener) {
+        if (listeners == null) {
+            return;
+        }
+        for (int i=listeners.size()-1 ; i>=0 ; i--) {
+            if (listeners.get(i).mListener == listener) {
+                listeners.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners of preference (preferenceListeners), and then the
+     * listeners of all the preferences, of a value change.
+     */
+    void dispatchValueChange(ArrayList<ListenerRegistration> preferenceListeners,
+            ListPreferenceWithEditText preference, String oldValue, String newValue, boolean isCustom) {
+        dispatch(preferenceListeners, preference, oldValue, newValue, isCustom);
+        dispatch(mValueChangeListeners, preference, oldValue, newValue, isCustom);
+    }
+
+    private static void dispatch(ArrayList<ListenerRegistration> listeners, final ListPreferenceWithEditText preference,
+            final String oldValue, final String newValue, final boolean isCustom) {
+        if (listeners == null) {
+            return;
+        }
+        for (int i=0 ; i<listeners.size() ; i++) {
+            ListenerRegistration registration = listeners.get(i);
+            final ListPreferenceWithEditText.OnValueChangeListener listener = registration.mListener;
+            if (registration.mExecutor == null) {
+                listener.onValueChanged(preference, oldValue, newValue, isCustom);
+            }
+            else {
+                registration.mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onValueChanged(preference, oldValue, newValue, isCustom);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Writes preference values without touching the disk on the calling (UI) thread.
+ * Values are buffered, and all the values that were buffered until a flush are
+ * committed together, as one batch, on a background thread.
+ * Until a value reaches the SharedPreferences, getString() returns it from the
+ * buffer, so readers on the UI thread always see the latest value.
+ * All methods (except awaitFlush()) should be called from the UI thread (the
+ * thread of the handler): the buffer isn't synchronized.
+ */
+class PreferenceWriter {
+    public enum FlushPolicy {
+        /** Flush on every apply() */
+        IMMEDIATE,
+        /** Flush once no apply() was done for the flush delay (coalesces bursts of writes) */
+        DEFERRED
+    }
+
+    // One thread for all the writers, so batches reach the disk in the order they were flushed.
+    private static final ExecutorService sDiskExecutor = Executors.newSingleThreadExecutor();
+
+    private final SharedPreferences mPrefs;
+    private final Handler mHandler;
+    private final LinkedHashMap<String, String> mPending = new LinkedHashMap<String, String>();
+    private final HashMap<String, String> mInFlight = new HashMap<String, String>(); // Guarded by itself
+    private FlushPolicy mFlushPolicy = FlushPolicy.IMMEDIATE;
+    private long mFlushDelayMillis = 500;
+    private Future<?> mLastFlush = null;
+    private ArrayList<DialogMetricsListener> mPendingMetricsListeners = null; // Of the operations in mPending
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public PreferenceWriter(SharedPreferences prefs, Handler handler) {
+        mPrefs   = prefs;
+        mHandler = handler;
+    }
+
+    /**
+     * @param policy When buffered values are flushed
+     * @param delayMillis Used only with the DEFERRED policy: how long to wait
+     *        for more writes before flushing
+     */
+    public void setFlushPolicy(FlushPolicy policy, long delayMillis) {
+        mFlushPolicy      = policy;
+        mFlushDelayMillis = delayMillis;
+    }
+
+    /** Buffer a value. It's not written until apply() (or flush()) is called. */
+    public void putString(String key, String value) {
+        mPending.put(key, value);
+    }
+
+    /** Done buffering the values of one operation. Schedule a flush according to the flush policy. */
+    public void apply() {
+        apply(null);
+    }
+
+    /**
+     * Like apply(), but also report the commit of the batch that contains this
+     * operation. The writer may be shared by several preferences, so each
+     * operation names its own listener.
+     * @param metricsListener Gets onPersisted() when the batch is committed. May be null.
+     */
+    public void apply(DialogMetricsListener metricsListener) {
+        if (metricsListener != null) {
+            if (mPendingMetricsListeners == null) {
+                mPendingMetricsListeners = new ArrayList<DialogMetricsListener>(2);
+            }
+            if (!mPendingMetricsListeners.contains(metricsListener)) {
+                mPendingMetricsListeners.add(metricsListener);
+            }
+        }
+        if (mFlushPolicy == FlushPolicy.IMMEDIATE) {
+            flush();
+        }
+        else {
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.postDelayed(mFlushRunnable, mFlushDelayMillis);
+        }
+    }
+
+    /** @return The latest value of key, even if it didn't reach the SharedPreferences yet */
+    public String getString(String key, String defValue) {
+        if (mPending.containsKey(key)) {
+            return mPending.get(key);
+        }
+        synchronized (mInFlight) {
+            if (mInFlight.containsKey(key)) {
+                return mInFlight.get(key);
+            }
+        }
+        return mPrefs.getString(key, defValue);
+    }
+
+    /** Hand all the buffered values to the background thread, to be committed as one batch */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPending.isEmpty()) {
+            return;
+        }
+        final HashMap<String, String> batch = new HashMap<String, String>(mPending);
+        mPending.clear();
+        final ArrayList<DialogMetricsListener> metricsListeners = mPendingMetricsListeners;
+        mPendingMetricsListeners = null;
+        synchronized (mInFlight) {
+            mInFlight.putAll(batch);
+        }
+        final long flushStartNanos = (metricsListeners != null ? System.nanoTime() : 0);
+        mLastFlush = sDiskExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences.Editor editor = mPrefs.edit();
+                for (Map.Entry<String, String> entry : batch.entrySet()) {
+                    editor.putString(entry.getKey(), entry.getValue());
+                }
+                editor.commit();
+                if (metricsListeners != null) {
+                    long persistNanos = System.nanoTime() - flushStartNanos;
+                    for (int i=0 ; i<metricsListeners.size() ; i++) {
+                        metricsListeners.get(i).onPersisted(persistNanos);
+                    }
+                }
+                synchronized (mInFlight) {
+                    for (Map.Entry<String, String> entry : batch.entrySet()) {
+                        // Don't remove a newer value of the same key that was flushed after us
+                        if (mInFlight.get(entry.getKey()) == entry.getValue()) {
+                            mInFlight.remove(entry.getKey());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Flush, and wait until everything that was flushed so far reached the disk.
+     * Meant mainly for tests. May be called from any thread: the flush itself
+     * runs on the handler's thread, which owns the buffer.
+     * @return true if all the writes completed within the timeout
+     */
+    public boolean awaitFlush(long timeoutMillis) throws InterruptedException {
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final Future<?>[] lastFlush = new Future<?>[1];
+        if (Looper.myLooper() == mHandler.getLooper()) {
+            flush();
+            lastFlush[0] = mLastFlush;
+        }
+        else {
+            final CountDownLatch flushed = new CountDownLatch(1);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                    lastFlush[0] = mLastFlush;
+                    flushed.countDown();
+                }
+            });
+            if (!flushed.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        if (lastFlush[0] == null) {
+            return true;
+        }
+        try {
+            lastFlush[0].get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        catch (TimeoutException e) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+
+/**
+ * A bounded pool of row views of a ListPreferenceWithEditText dialog, kept
+ * across dialog openings. Rows can be pre-inflated (e.g. while the UI thread is
+ * idle) so opening the dialog doesn't pay the inflation cost, and the rows of a
+ * closed dialog are returned to the pool for the next opening.
+ * Views in the pool are detached, and carry no tag or listeners.
+ */
+class RowViewPool {
+    private final int mMaxNormalRows;
+    private final ArrayList<View> mNormalRows;
+    private View mCustomRow = null; // A dialog has only one custom row
+
+    /** @param maxNormalRows Maximum number of "normal" rows kept in the pool */
+    public RowViewPool(int maxNormalRows) {
+        mMaxNormalRows = maxNormalRows;
+        mNormalRows = new ArrayList<View>(maxNormalRows);
+    }
+
+    /** Inflate rows until the pool is full */
+    public void prewarm(Context context) {
+        LayoutInflater inflater = LayoutInflater.from(context);
+        while (mNormalRows.size() < mMaxNormalRows) {
+            // No parent: the ListView gives the row its layout params when it's added
+            mNormalRows.add(inflater.inflate(R.layout.list_preference_row_normal, null, false));
+        }
+        if (mCustomRow == null) {
+            mCustomRow = inflater.inflate(R.layout.list_preference_row_with_edit_text, null, false);
+        }
+    }
+
+    /**
+     * @param rowType DialogMetricsListener.ROW_TYPE_NORMAL or ROW_TYPE_CUSTOM
+     * @return A pooled row of the requested type, or null if there's none
+     */
+    public View acquire(int rowType) {
+        if (rowType == DialogMetricsListener.ROW_TYPE_CUSTOM) {
+            View row = mCustomRow;
+            mCustomRow = null;
+            return row;
+        }
+        int size = mNormalRows.size();
+        return (size == 0 ? null : mNormalRows.remove(size - 1));
+    }
+
+    /**
+     * Return a detached row to the pool. If the pool is full, the row is dropped.
+     * The caller is responsible for clearing the row's tag and listeners.
+     */
+    public void release(View row, int rowType) {
+        if (rowType == DialogMetricsListener.ROW_TYPE_CUSTOM) {
+            mCustomRow = row;
+        }
+        else if (mNormalRows.size() < mMaxNormalRows) {
+            mNormalRows.add(row);
+        }
+    }
+
+    /** Drop all the pooled rows */
+    public void clear() {
+        mNormalRows.clear();
+        mCustomRow = null;
+    }
+}
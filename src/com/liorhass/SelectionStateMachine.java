@@ -0,0 +1,178 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/**
+ * The selection and editing logic of a ListPreferenceWithEditText dialog:
+ * which row is checked, whether the custom field owns the focus, and what is
+ * persisted when the user selects a row or presses OK.
+ * This class doesn't depend on Android, so it can be exercised and measured on
+ * a plain JVM. The dialog's adapter feeds it the UI events and renders the rows
+ * according to its state.
+ *
+ * The selected row is looked up once (when the dialog is opened) through the
+ * entry source's value-to-index lookup, so deciding whether a row is checked
+ * costs O(1).
+ */
+class SelectionStateMachine {
+    /** Selected index when the current value doesn't match any of the "normal" rows */
+    public static final int NO_SELECTION = EntrySource.NOT_FOUND;
+
+    public enum State {
+        /** The current value is one of the normal rows */
+        PRESET_SELECTED,
+        /** The current value doesn't match any normal row, so the custom row is checked */
+        CUSTOM_SELECTED,
+        /** The custom field got the focus. The user may edit it and press OK. */
+        CUSTOM_EDITING,
+        /** A value was chosen (a normal row was clicked, or OK was pressed) */
+        DONE
+    }
+
+    private final EntrySource mSource;
+    private final CustomValueHistory mHistory;
+    private final String mInitialValue;
+    private State mState;
+    private int mSelectedIndex = NO_SELECTION;
+    private int mSelectedHistoryIndex = NO_SELECTION;  // The history row matching the current custom value, if any
+    private String mCustomValue;
+    private boolean mBinding = false;  // true while the custom field is being populated by the adapter
+
+    /**
+     * @param source The normal rows
+     * @param history Recently used custom values, shown as rows between the
+     *        normal rows and the custom row
+     * @param currentValue The current value of the preference (may be null)
+     * @param customValue The initial text of the custom field
+     */
+    public SelectionStateMachine(EntrySource source, CustomValueHistory history, String currentValue, String customValue) {
+        mSource        = source;
+        mHistory       = history;
+        mInitialValue  = currentValue;
+        mSelectedIndex = source.indexOfValue(currentValue);
+        mState         = (mSelectedIndex == NO_SELECTION ? State.CUSTOM_SELECTED : State.PRESET_SELECTED);
+        mCustomValue   = customValue;
+        if (mState == State.CUSTOM_SELECTED  &&  currentValue != null) {
+            mSelectedHistoryIndex = history.indexOf(currentValue);
+        }
+    }
+
+    /** @return The value of the preference when the dialog was opened */
+    public String getInitialValue() {
+        return mInitialValue;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    public int getSelectedIndex() {
+        return mSelectedIndex;
+    }
+
+    public String getCustomValue() {
+        return mCustomValue;
+    }
+
+    /** @return true if the custom field got the focus */
+    public boolean isEditingCustomValue() {
+        return mState == State.CUSTOM_EDITING;
+    }
+
+    /**
+     * @return true if the normal row whose source index is sourceIndex should have
+     * its radio button checked. If the custom field got the focus, no normal row
+     * is checked even if its value matches the current preference value.
+     */
+    public boolean isNormalRowChecked(int sourceIndex) {
+        return sourceIndex == mSelectedIndex  &&  mState == State.PRESET_SELECTED;
+    }
+
+    /**
+     * @return true if the history row at historyIndex should have its radio
+     * button checked, i.e. the current value is that recently used custom value.
+     */
+    public boolean isHistoryRowChecked(int historyIndex) {
+        return historyIndex == mSelectedHistoryIndex  &&  mState == State.CUSTOM_SELECTED;
+    }
+
+    /**
+     * @return true if the custom row should have its radio button checked. This is
+     * the case if the current value doesn't match any of the normal rows (nor the
+     * history rows), or if the custom field got the focus.
+     */
+    public boolean isCustomRowChecked() {
+        return (mState == State.CUSTOM_SELECTED  &&  mSelectedHistoryIndex == NO_SELECTION)  ||
+                mState == State.CUSTOM_EDITING;
+    }
+
+    /**
+     * The adapter is about to (re-)populate the custom field. Text changes
+     * reported until endBind() are the adapter's own, not the user's, so they're ignored.
+     */
+    public void beginBind() {
+        mBinding = true;
+    }
+
+    public void endBind() {
+        mBinding = false;
+    }
+
+    /**
+     * The custom field got the focus.
+     * @return true if this is the first time, i.e. the checked row changed
+     * (from the previously selected normal row to the custom row) and the
+     * custom value may now be committed with OK.
+     */
+    public boolean onCustomFieldFocused() {
+        if (mState == State.CUSTOM_EDITING || mState == State.DONE) {
+            return false;
+        }
+        mState = State.CUSTOM_EDITING;
+        return true;
+    }
+
+    /**
+     * The text of the custom field changed.
+     * @return true if the change was made by the user (and was recorded)
+     */
+    public boolean onCustomTextChanged(String text) {
+        if (mBinding) {
+            return false;
+        }
+        mCustomValue = text;
+        return true;
+    }
+
+    /**
+     * A normal row was clicked.
+     * @return The value to persist
+     */
+    public String onNormalRowClicked(int sourceIndex) {
+        mSelectedIndex = sourceIndex;
+        mState = State.DONE;
+        return mSource.getEntryValue(sourceIndex).toString();
+    }
+
+    /**
+     * A history row was clicked.
+     * @return The custom value to persist
+     */
+    public String onHistoryRowClicked(int historyIndex) {
+        mSelectedIndex = NO_SELECTION;
+        mSelectedHistoryIndex = historyIndex;
+        mState = State.DONE;
+        return mHistory.get(historyIndex);
+    }
+
+    /**
+     * OK was pressed.
+     * @return The custom value to persist
+     */
+    public String onOkClicked() {
+        mSelectedIndex = NO_SELECTION;
+        mState = State.DONE;
+        return mCustomValue;
+    }
+}
@@ -3,21 +3,44 @@
 //
 package com.liorhass;
 
+import java.util.Iterator;
+
 import com.liorhass.R;
 
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
-import android.preference.ListPreference;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.preference.PreferenceFragment;
 
-public class SettingsFragment extends PreferenceFragment implements OnSharedPreferenceChangeListener {
+public class SettingsFragment extends PreferenceFragment {
+    // Roughly the number of rows that fit in a ListPreferenceWithEditText dialog
+    private static final int PREWARM_ROW_COUNT = 10;
+
+    private SummaryBinder mSummaryBinder;
+
+    // Pre-inflates the dialogs' rows once the UI thread has nothing better to do
+    private final MessageQueue.IdleHandler mPrewarmIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            for (ListPreferenceWithEditText preference : mSummaryBinder.getPreferences()) {
+                preference.prewarmRows(PREWARM_ROW_COUNT);
+            }
+            return false; // Run once
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         // Load the preferences from an XML resource
         addPreferencesFromResource(R.xml.preferences);
+
+        // Find the preferences that have a summary line once, for the fragment's lifetime
+        mSummaryBinder = new SummaryBinder(getPreferenceScreen());
+
+        Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
     }
 
     @Override
@@ -25,26 +48,32 @@ public class SettingsFragment extends PreferenceFragment implements OnSharedPref
         super.onResume();
         
         SharedPreferences sp = getPreferenceScreen().getSharedPreferences();
-        sp.registerOnSharedPreferenceChangeListener(this);
+        sp.registerOnSharedPreferenceChangeListener(mSummaryBinder);
 
         // Update the summary lines of the settings screen
-        setSummaryLines(sp);
+        mSummaryBinder.bindAll(sp);
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        getPreferenceScreen().getSharedPreferences().unregisterOnSharedPreferenceChangeListener(this);
+        // With the DEFERRED flush policy a selection may still be buffered. Start
+        // committing it now, as the process may be killed once the screen is in
+        // the background. The writer is shared, so flushing one preference is enough.
+        Iterator<ListPreferenceWithEditText> preferences = mSummaryBinder.getPreferences().iterator();
+        if (preferences.hasNext()) {
+            preferences.next().flushPendingWrites();
+        }
+        getPreferenceScreen().getSharedPreferences().unregisterOnSharedPreferenceChangeListener(mSummaryBinder);
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        setSummaryLines(sharedPreferences);
-    }
-
-    /** Sets the summary lines of preferences that have such a line */
-    private void setSummaryLines(SharedPreferences sharedPreferences) {
-        String baudrate = sharedPreferences.getString("pref_baudrate", "");
-        ((ListPreference)findPreference("pref_baudrate")).setSummary(baudrate);
+    public void onDestroy() {
+        super.onDestroy();
+        // The pooled rows hold the activity's context
+        Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+        for (ListPreferenceWithEditText preference : mSummaryBinder.getPreferences()) {
+            preference.releaseRowViewPool();
+        }
     }
 }
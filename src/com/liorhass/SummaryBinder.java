@@ -0,0 +1,75 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.preference.Preference;
+import android.preference.PreferenceGroup;
+
+/**
+ * Keeps the summary lines of the ListPreferenceWithEditText preferences of a
+ * settings screen up to date.
+ * The screen's preferences are found once, when the binder is created, and kept
+ * in a key-to-preference map. When a SharedPreferences key changes, only the
+ * preference with that key (if any) formats its summary. Other keys (e.g. the
+ * "_custom" keys) are ignored.
+ * Typical use: create the binder in PreferenceFragment.onCreate(), call
+ * bindAll() and register it as an OnSharedPreferenceChangeListener in onResume(),
+ * and unregister it in onPause().
+ */
+public class SummaryBinder implements OnSharedPreferenceChangeListener {
+    private final HashMap<String, ListPreferenceWithEditText> mPreferences = new HashMap<String, ListPreferenceWithEditText>();
+
+    /** @param root The preferences screen (or any other group). Nested groups are searched too. */
+    public SummaryBinder(PreferenceGroup root) {
+        collect(root);
+    }
+
+    private void collect(PreferenceGroup group) {
+        int count = group.getPreferenceCount();
+        for (int i=0 ; i<count ; i++) {
+            Preference preference = group.getPreference(i);
+            if (preference instanceof ListPreferenceWithEditText) {
+                if (preference.getKey() != null) {
+                    mPreferences.put(preference.getKey(), (ListPreferenceWithEditText)preference);
+                }
+            }
+            else if (preference instanceof PreferenceGroup) {
+                collect((PreferenceGroup)preference);
+            }
+        }
+    }
+
+    /** @return The bound preference whose key is key, or null */
+    public ListPreferenceWithEditText findPreference(String key) {
+        return mPreferences.get(key);
+    }
+
+    /** @return All the bound preferences */
+    public Collection<ListPreferenceWithEditText> getPreferences() {
+        return mPreferences.values();
+    }
+
+    /** Set the summaries of all the bound preferences, in one pass over a single snapshot of sharedPreferences */
+    public void bindAll(SharedPreferences sharedPreferences) {
+        Map<String, ?> values = sharedPreferences.getAll();
+        for (Map.Entry<String, ListPreferenceWithEditText> entry : mPreferences.entrySet()) {
+            Object value = values.get(entry.getKey());
+            entry.getValue().updateSummary(value instanceof String ? (String)value : null);
+        }
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        ListPreferenceWithEditText preference = mPreferences.get(key);
+        if (preference != null) {
+            preference.updateSummary(sharedPreferences.getString(key, null));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.os.Handler;
+
+/**
+ * Validates the custom value of one dialog with a (possibly slow) validator,
+ * without blocking typing: a check starts only once the value stopped changing
+ * for the debounce delay, runs on a background executor, and is cancelled when
+ * the value changes again. Each check is tagged with a generation number, so
+ * only the result of the latest one is ever used.
+ * All methods (except the validator's) run on the UI thread.
+ */
+class ValidationPipeline {
+    /** Called (on the UI thread) when the result of the latest check is known */
+    interface Callback {
+        void onValidated();
+    }
+
+    // Used when the application doesn't provide an executor
+    private static ExecutorService sDefaultExecutor = null;
+
+    private final ListPreferenceWithEditText mPreference;
+    private final ListPreferenceWithEditText.CustomValueValidator mValidator;
+    private final ExecutorService mExecutor;
+    private final Handler mHandler;
+    private final long mDebounceMillis;
+    private final Callback mCallback;
+
+    private int mGeneration = 0;
+    private String mValue = null;                // The value of the latest generation
+    private boolean mValidated = false;          // true once the latest generation's result arrived
+    private CharSequence mError = null;          // The latest generation's result (null: valid)
+    private Future<?> mInFlight = null;
+
+    private final Runnable mStartRunnable = new Runnable() {
+        @Override
+        public void run() {
+            start();
+        }
+    };
+
+    ValidationPipeline(ListPreferenceWithEditText preference, ListPreferenceWithEditText.CustomValueValidator validator,
+            ExecutorService executor, Handler handler, long debounceMillis, Callback callback) {
+        mPreference     = preference;
+        mValidator      = validator;
+        mExecutor       = (executor != null ? executor : getDefaultExecutor());
+        mHandler        = handler;
+        mDebounceMillis = debounceMillis;
+        mCallback       = callback;
+    }
+
+    private static ExecutorService getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sDefaultExecutor;
+    }
+
+    /** The value changed. Drop the current result, and check the new value once it settles. */
+    public void onValueChanged(String value) {
+        if (value == null ? mValue == null : value.equals(mValue)) {
+            return;
+        }
+        cancel();
+        mValue = value;
+        mHandler.postDelayed(mStartRunnable, mDebounceMillis);
+    }
+
+    /** @return true if value was checked and found valid */
+    public boolean isValid(String value) {
+        return mValidated  &&  mError == null  &&  value != null  &&  value.equals(mValue);
+    }
+
+    /** @return The error found by the check of value (null if valid, or not checked yet) */
+    public CharSequence getError(String value) {
+        return (mValidated  &&  value != null  &&  value.equals(mValue) ? mError : null);
+    }
+
+    /** Stop the pending and in-flight checks, and forget the latest result. */
+    public void cancel() {
+        mGeneration++; // Results of checks that are already running are ignored
+        mValue     = null;
+        mValidated = false;
+        mError     = null;
+        mHandler.removeCallbacks(mStartRunnable);
+        if (mInFlight != null) {
+            mInFlight.cancel(true);
+            mInFlight = null;
+        }
+    }
+
+    private void start() {
+        final int generation = mGeneration;
+        final String value = mValue;
+        mInFlight = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final CharSequence error = mValidator.validate(mPreference, value);
+                if (Thread.currentThread().isInterrupted()) {
+                    return; // Cancelled. A newer check was (or will be) started.
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return; // Stale
+                        }
+                        mInFlight  = null;
+                        mValidated = true;
+                        mError     = error;
+                        mCallback.onValidated();
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,30 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ArrayEntrySourceTest {
+    @Test
+    public void countExcludesTheCustomRowPlaceholder() {
+        String[] entries = { "Slow", "Fast", "Custom" };
+        String[] values  = { "1200", "9600", "4800" };
+        ArrayEntrySource source = new ArrayEntrySource(entries, values, values.length-1);
+        assertEquals(2, source.getCount());
+        assertEquals("Fast", source.getEntry(1));
+        assertEquals("9600", source.getEntryValue(1));
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue("4800"));
+    }
+
+    @Test
+    public void indexOfValueFindsTheFirstOfDuplicates() {
+        ArrayEntrySource source = TestEntrySources.of("a", "b", "a", "c");
+        assertEquals(0, source.indexOfValue("a"));
+        assertEquals(3, source.indexOfValue("c"));
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue("d"));
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue(null));
+    }
+}
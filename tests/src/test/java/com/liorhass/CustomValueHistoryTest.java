@@ -0,0 +1,81 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CustomValueHistoryTest {
+    @Test
+    public void mostRecentFirstAndBounded() {
+        CustomValueHistory history = new CustomValueHistory(3);
+        history.add("1");
+        history.add("2");
+        history.add("3");
+        history.add("4");
+        assertEquals(3, history.size());
+        assertEquals("4", history.get(0));
+        assertEquals("2", history.get(2));
+
+        history.add("3"); // Moves to the front, no duplicate
+        assertEquals(3, history.size());
+        assertEquals("3", history.get(0));
+        assertEquals("4", history.get(1));
+    }
+
+    @Test
+    public void ignoresEmptyValuesAndValuesWithTheSeparator() {
+        CustomValueHistory history = new CustomValueHistory(3);
+        history.add("");
+        history.add(null);
+        history.add("a\u001Fb");
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void zeroSizeKeepsNothing() {
+        CustomValueHistory history = new CustomValueHistory(0);
+        history.add("1");
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        CustomValueHistory history = new CustomValueHistory(4);
+        history.add("a");
+        history.add("b b");
+        history.add("c");
+        CustomValueHistory decoded = CustomValueHistory.decode(history.encode(), 4);
+        assertEquals(3, decoded.size());
+        assertEquals("c", decoded.get(0));
+        assertEquals("b b", decoded.get(1));
+        assertEquals("a", decoded.get(2));
+    }
+
+    @Test
+    public void decodeTruncatesToTheNewSize() {
+        CustomValueHistory history = new CustomValueHistory(4);
+        history.add("a");
+        history.add("b");
+        history.add("c");
+        CustomValueHistory decoded = CustomValueHistory.decode(history.encode(), 2);
+        assertEquals(2, decoded.size());
+        assertEquals("c", decoded.get(0));
+        assertEquals(0, CustomValueHistory.decode(null, 2).size());
+    }
+
+    @Test
+    public void removeEntriesOfDropsPresetValues() {
+        CustomValueHistory history = new CustomValueHistory(4);
+        history.add("9600");
+        history.add("1234");
+        history.add("4800");
+        history.removeEntriesOf(TestEntrySources.of("4800", "9600"));
+        assertEquals(1, history.size());
+        assertEquals("1234", history.get(0));
+        assertEquals(0, history.indexOf("1234"));
+        assertEquals(-1, history.indexOf("9600"));
+    }
+}
@@ -0,0 +1,104 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EntryPrefixIndexTest {
+    @Test
+    public void unfilteredShowsEverythingInSourceOrder() {
+        EntryPrefixIndex index = new EntryPrefixIndex(TestEntrySources.of("b", "a", "c"));
+        assertFalse(index.isFiltering());
+        assertEquals(3, index.getCount());
+        assertEquals(0, index.getSourceIndex(0));
+        assertEquals(2, index.getSourceIndex(2));
+    }
+
+    @Test
+    public void filtersByPrefixKeepingSourceOrder() {
+        EntryPrefixIndex index = new EntryPrefixIndex(TestEntrySources.of("1200", "19200", "2400", "115200", "14400"));
+        assertTrue(index.setPrefix("1"));
+        assertEquals(4, index.getCount());
+        assertEquals(0, index.getSourceIndex(0));
+        assertEquals(1, index.getSourceIndex(1));
+        assertEquals(3, index.getSourceIndex(2));
+        assertEquals(4, index.getSourceIndex(3));
+
+        assertTrue(index.setPrefix("11"));
+        assertEquals(1, index.getCount());
+        assertEquals(3, index.getSourceIndex(0));
+
+        assertFalse(index.setPrefix("11"));
+        assertTrue(index.setPrefix("3"));
+        assertEquals(0, index.getCount());
+
+        assertTrue(index.setPrefix(""));
+        assertEquals(5, index.getCount());
+        assertFalse(index.setPrefix(null));
+    }
+
+    @Test
+    public void sharedSortedValuesKeepTheirOwnFilterState() {
+        EntryPrefixIndex.SortedValues sorted = new EntryPrefixIndex.SortedValues(TestEntrySources.of("ab", "b", "aa"));
+        EntryPrefixIndex first  = new EntryPrefixIndex(sorted);
+        EntryPrefixIndex second = new EntryPrefixIndex(sorted);
+        first.setPrefix("a");
+        assertEquals(2, first.getCount());
+        assertEquals(3, second.getCount());
+    }
+
+    @Test
+    public void readsAWrappedPagedSourceWithoutDisturbingItsWindow() {
+        TestEntrySources.CountingPagedSource paged = new TestEntrySources.CountingPagedSource(95, 10, 2);
+        NumericEntrySource numeric = new NumericEntrySource(paged);
+        numeric.getEntry(0);
+        numeric.getEntry(10);
+        int loads = paged.mLoads;
+        EntryPrefixIndex index = new EntryPrefixIndex(numeric);
+        index.setPrefix("9");
+        assertEquals(6, index.getCount());      // 9, 90..94
+        assertEquals(loads + 8, paged.mLoads);  // The two pages in the window weren't loaded again
+        numeric.getEntry(0);
+        numeric.getEntry(10);
+        assertEquals(loads + 8, paged.mLoads);
+    }
+
+    @Test
+    public void matchesBruteForceWhileTyping() {
+        Random random = new Random(7);
+        String[] values = new String[5000];
+        for (int i=0 ; i<values.length ; i++) {
+            values[i] = Integer.toString(random.nextInt(100000));
+        }
+        EntryPrefixIndex index = new EntryPrefixIndex(TestEntrySources.of(values));
+        for (int query=0 ; query<300 ; query++) {
+            // Type a random number one character at a time, sometimes deleting one
+            String typed = Integer.toString(random.nextInt(100000));
+            for (int length=1 ; length<=typed.length() ; length++) {
+                String prefix = typed.substring(0, length);
+                if (random.nextInt(4) == 0  &&  length > 1) {
+                    prefix = typed.substring(0, length - 1);
+                }
+                index.setPrefix(prefix);
+                ArrayList<Integer> expected = new ArrayList<Integer>();
+                for (int i=0 ; i<values.length ; i++) {
+                    if (values[i].startsWith(prefix)) {
+                        expected.add(i);
+                    }
+                }
+                assertEquals(expected.size(), index.getCount());
+                for (int i=0 ; i<expected.size() ; i++) {
+                    assertEquals((int)expected.get(i), index.getSourceIndex(i));
+                }
+            }
+        }
+    }
+}
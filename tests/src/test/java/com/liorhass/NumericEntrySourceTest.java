@@ -0,0 +1,116 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NumericEntrySourceTest {
+    private static NumericEntrySource numeric(long... values) {
+        String[] strings = new String[values.length];
+        for (int i=0 ; i<values.length ; i++) {
+            strings[i] = Long.toString(values[i]);
+        }
+        return new NumericEntrySource(TestEntrySources.of(strings));
+    }
+
+    @Test
+    public void indexOfValueComparesNumbers() {
+        NumericEntrySource source = new NumericEntrySource(TestEntrySources.of("9600", "1200", " 300", "1200"));
+        assertEquals(0, source.indexOfValue("09600"));
+        assertEquals(1, source.indexOfValue("1200"));   // The first of equal values
+        assertEquals(2, source.indexOfValue("300"));
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue("2400"));
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue("fast"));
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue((String)null));
+        assertEquals(300, source.getLongValue(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsNonNumericEntries() {
+        new NumericEntrySource(TestEntrySources.of("1", "two"));
+    }
+
+    @Test
+    public void readsAPagedSourceWithoutDisturbingItsWindow() {
+        TestEntrySources.CountingPagedSource paged = new TestEntrySources.CountingPagedSource(95, 10, 2);
+        paged.getEntry(0);
+        paged.getEntry(10);
+        int loads = paged.mLoads;
+        NumericEntrySource source = new NumericEntrySource(paged);
+        assertEquals(94, source.indexOfValue(94));
+        assertEquals(loads + 8, paged.mLoads);  // The two pages in the window weren't loaded again
+        source.getEntry(0);
+        source.getEntry(10);
+        assertEquals(loads + 8, paged.mLoads);  // ... and are still there
+    }
+
+    @Test
+    public void sortedOrderIsStable() {
+        NumericEntrySource source = numeric(5, 1, 5, 3);
+        assertEquals(1, source.getSourceIndexOfSorted(0));
+        assertEquals(3, source.getSourceIndexOfSorted(1));
+        assertEquals(0, source.getSourceIndexOfSorted(2));
+        assertEquals(2, source.getSourceIndexOfSorted(3));
+    }
+
+    @Test
+    public void nearest() {
+        NumericEntrySource source = numeric(9600, 1200, 2400, 4800);
+        assertEquals(-1, numeric().nearest(5));
+        assertEquals(1200, source.getSortedValue(source.nearest(0)));
+        assertEquals(9600, source.getSortedValue(source.nearest(100000)));
+        assertEquals(2400, source.getSortedValue(source.nearest(2400)));
+        assertEquals(2400, source.getSortedValue(source.nearest(2500)));
+        assertEquals(4800, source.getSortedValue(source.nearest(4000)));
+        assertEquals(2400, source.getSortedValue(source.nearest(3600))); // A tie: the smaller one
+    }
+
+    @Test
+    public void nearestDoesntOverflow() {
+        NumericEntrySource source = numeric(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(Long.MIN_VALUE, source.getSortedValue(source.nearest(-1)));
+        assertEquals(Long.MAX_VALUE, source.getSortedValue(source.nearest(1)));
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(1);
+        for (int iteration=0 ; iteration<500 ; iteration++) {
+            long[] values = new long[1 + random.nextInt(20)];
+            for (int i=0 ; i<values.length ; i++) {
+                values[i] = randomValue(random);
+            }
+            NumericEntrySource source = numeric(values);
+            for (int query=0 ; query<20 ; query++) {
+                long value = randomValue(random);
+                int sorted = source.nearest(value);
+                BigInteger best = null;
+                for (long v : values) {
+                    BigInteger distance = BigInteger.valueOf(v).subtract(BigInteger.valueOf(value)).abs();
+                    if (best == null  ||  distance.compareTo(best) < 0) {
+                        best = distance;
+                    }
+                }
+                assertEquals(best, BigInteger.valueOf(source.getSortedValue(sorted)).subtract(BigInteger.valueOf(value)).abs());
+                if (sorted > 0) { // The first of equal values (and the smaller one on a tie)
+                    BigInteger previous = BigInteger.valueOf(source.getSortedValue(sorted-1)).subtract(BigInteger.valueOf(value)).abs();
+                    assertEquals(1, previous.compareTo(best));
+                }
+            }
+        }
+    }
+
+    private static long randomValue(Random random) {
+        switch (random.nextInt(3)) {
+        case 0:  return Long.MIN_VALUE + random.nextInt(3);
+        case 1:  return Long.MAX_VALUE - random.nextInt(3);
+        default: return random.nextInt(60) - 30;
+        }
+    }
+}
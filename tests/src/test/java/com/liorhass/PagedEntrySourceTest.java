@@ -0,0 +1,54 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PagedEntrySourceTest {
+    @Test
+    public void loadsPagesLazilyWithinTheWindow() {
+        TestEntrySources.CountingPagedSource source = new TestEntrySources.CountingPagedSource(100, 10, 2);
+        assertEquals("#15", source.getEntry(15));
+        assertEquals("16", source.getEntryValue(16));
+        assertEquals(1, source.mLoads);
+        source.getEntry(25);
+        source.getEntry(35);        // Drops page 1 (the least recently used)
+        source.getEntry(15);
+        assertEquals(4, source.mLoads);
+        assertEquals(42, source.indexOfValue("42"));
+    }
+
+    @Test
+    public void copyValuesLeavesTheWindowAsItIs() {
+        TestEntrySources.CountingPagedSource source = new TestEntrySources.CountingPagedSource(95, 10, 2);
+        source.getEntry(0);
+        source.getEntry(10);
+        int loads = source.mLoads;
+        String[] values = new String[95];
+        source.copyValues(values);
+        assertEquals("94", values[94]);
+        assertEquals("3", values[3]);
+        assertEquals(loads + 8, source.mLoads);  // The two pages in the window weren't loaded again
+        source.getEntry(0);
+        source.getEntry(10);
+        assertEquals(loads + 8, source.mLoads);  // ... and are still there
+    }
+
+    @Test
+    public void indexOfValueLeavesTheWindowAsItIs() {
+        TestEntrySources.CountingPagedSource source = new TestEntrySources.CountingPagedSource(95, 10, 2);
+        source.getEntry(0);
+        source.getEntry(10);
+        int loads = source.mLoads;
+        assertEquals(94, source.indexOfValue("94"));
+        assertEquals(loads + 8, source.mLoads);  // The two pages in the window weren't loaded again
+        assertEquals(EntrySource.NOT_FOUND, source.indexOfValue("95"));
+        assertEquals(5, source.indexOfValue("5"));
+        source.getEntry(0);
+        source.getEntry(10);
+        assertEquals(loads + 16, source.mLoads); // ... and are still there
+    }
+}
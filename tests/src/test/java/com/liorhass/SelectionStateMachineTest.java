@@ -0,0 +1,95 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SelectionStateMachineTest {
+    private final EntrySource mSource = TestEntrySources.of("1200", "2400", "9600");
+
+    private SelectionStateMachine newMachine(String currentValue, CustomValueHistory history) {
+        return new SelectionStateMachine(mSource, history, currentValue, "4800");
+    }
+
+    private SelectionStateMachine newMachine(String currentValue) {
+        return newMachine(currentValue, new CustomValueHistory(0));
+    }
+
+    @Test
+    public void presetValueChecksItsRow() {
+        SelectionStateMachine machine = newMachine("2400");
+        assertEquals(SelectionStateMachine.State.PRESET_SELECTED, machine.getState());
+        assertEquals(1, machine.getSelectedIndex());
+        assertTrue(machine.isNormalRowChecked(1));
+        assertFalse(machine.isNormalRowChecked(0));
+        assertFalse(machine.isCustomRowChecked());
+    }
+
+    @Test
+    public void unknownValueChecksTheCustomRow() {
+        SelectionStateMachine machine = newMachine("1234");
+        assertEquals(SelectionStateMachine.State.CUSTOM_SELECTED, machine.getState());
+        assertTrue(machine.isCustomRowChecked());
+        assertFalse(machine.isNormalRowChecked(0));
+        assertEquals("1234", machine.getInitialValue());
+        assertEquals("4800", machine.getCustomValue());
+    }
+
+    @Test
+    public void historyValueChecksItsHistoryRow() {
+        CustomValueHistory history = new CustomValueHistory(3);
+        history.add("1234");
+        history.add("5678");
+        SelectionStateMachine machine = newMachine("1234", history);
+        assertTrue(machine.isHistoryRowChecked(1));
+        assertFalse(machine.isHistoryRowChecked(0));
+        assertFalse(machine.isCustomRowChecked());
+        assertEquals("5678", machine.onHistoryRowClicked(0));
+        assertEquals(SelectionStateMachine.State.DONE, machine.getState());
+    }
+
+    @Test
+    public void focusingTheCustomFieldMovesTheCheckOnce() {
+        SelectionStateMachine machine = newMachine("2400");
+        assertTrue(machine.onCustomFieldFocused());
+        assertFalse(machine.onCustomFieldFocused());
+        assertTrue(machine.isEditingCustomValue());
+        assertTrue(machine.isCustomRowChecked());
+        assertFalse(machine.isNormalRowChecked(1));
+    }
+
+    @Test
+    public void textChangesDuringBindAreIgnored() {
+        SelectionStateMachine machine = newMachine("2400");
+        machine.beginBind();
+        assertFalse(machine.onCustomTextChanged(""));
+        machine.endBind();
+        assertEquals("4800", machine.getCustomValue());
+        assertTrue(machine.onCustomTextChanged("19200"));
+        assertEquals("19200", machine.getCustomValue());
+    }
+
+    @Test
+    public void okCommitsTheCustomValue() {
+        SelectionStateMachine machine = newMachine("2400");
+        machine.onCustomFieldFocused();
+        machine.onCustomTextChanged("19200");
+        assertEquals("19200", machine.onOkClicked());
+        assertEquals(SelectionStateMachine.State.DONE, machine.getState());
+        assertEquals(SelectionStateMachine.NO_SELECTION, machine.getSelectedIndex());
+        assertFalse(machine.onCustomFieldFocused());
+    }
+
+    @Test
+    public void clickingANormalRowCommitsItsValue() {
+        SelectionStateMachine machine = newMachine("1234");
+        assertEquals("9600", machine.onNormalRowClicked(2));
+        assertEquals(2, machine.getSelectedIndex());
+        assertEquals(SelectionStateMachine.State.DONE, machine.getState());
+    }
+}
@@ -0,0 +1,45 @@
+//
+//  Copyright (c) 2014 Lior Hass
+//
+package com.liorhass;
+
+/** Helpers that build entry sources for the tests */
+class TestEntrySources {
+    private TestEntrySources() {}
+
+    /** A paged source of the numbers 0..count-1 that counts the pages it loads */
+    static class CountingPagedSource extends PagedEntrySource {
+        private final int mCount;
+        int mLoads = 0;
+        CountingPagedSource(int count, int pageSize, int maxPages) {
+            super(pageSize, maxPages);
+            mCount = count;
+        }
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+        @Override
+        protected void loadPage(int firstIndex, int count, CharSequence[] entries, CharSequence[] entryValues) {
+            mLoads++;
+            for (int i=0 ; i<count ; i++) {
+                entries[i]     = "#" + (firstIndex + i);
+                entryValues[i] = Integer.toString(firstIndex + i);
+            }
+        }
+    }
+
+    /** @return A source whose entries and values are values (no custom-row placeholder) */
+    static ArrayEntrySource of(String... values) {
+        return new ArrayEntrySource(values, values, values.length);
+    }
+
+    /** @return A source of count entries whose values are the numbers 0, step, 2*step, ... */
+    static ArrayEntrySource numbers(int count, int step) {
+        String[] values = new String[count];
+        for (int i=0 ; i<count ; i++) {
+            values[i] = Integer.toString(i * step);
+        }
+        return of(values);
+    }
+}